@@ -0,0 +1,70 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares calling a JS function with numbers using
+ * {@link QuickJSFunction#call(Object...)} to
+ * {@link QuickJSFunction#callDouble(double...)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FunctionCallBenchmark {
+    private static final String FUNCTION = "(base, quantity, discount, tax) => base * quantity * (1 - discount) * (1 + tax)";
+
+    private QuickJSRuntime runtime;
+    private QuickJSContext context;
+    private QuickJSFunction function;
+
+    private double base = 12.5;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        runtime = new QuickJSRuntime();
+        context = runtime.createContext();
+        function = (QuickJSFunction) context.eval(FUNCTION);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        runtime.close();
+    }
+
+    /**
+     * Boxes and encodes the arguments and the result
+     *
+     * @return result of the function
+     */
+    @Benchmark
+    public double call() {
+        return ((Number) function.call(base, 3.0, 0.1, 0.19)).doubleValue();
+    }
+
+    /**
+     * Passes arguments and result as primitives
+     *
+     * @return result of the function
+     */
+    @Benchmark
+    public double callDouble() {
+        return function.callDouble(base, 3.0, 0.1, 0.19);
+    }
+}
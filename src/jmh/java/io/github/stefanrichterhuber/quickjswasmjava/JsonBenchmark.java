@@ -0,0 +1,100 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares handing a document of about 1 MB to JS as java map (packed value by
+ * value) with handing it over as JSON parsed by the native JSON.parse.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    private QuickJSRuntime runtime;
+    private QuickJSContext context;
+    private Map<String, Object> document;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        runtime = new QuickJSRuntime();
+        context = runtime.createContext();
+
+        final List<Object> rows = new ArrayList<>();
+        final StringBuilder builder = new StringBuilder("{\"rows\":[");
+        for (int i = 0; i < 10_000; i++) {
+            final Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", "item " + i);
+            row.put("price", i * 0.5);
+            row.put("active", i % 2 == 0);
+            row.put("description", "a short description of item " + i);
+            rows.add(row);
+
+            builder.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(i)
+                    .append(",\"name\":\"item ").append(i)
+                    .append("\",\"price\":").append(i * 0.5)
+                    .append(",\"active\":").append(i % 2 == 0)
+                    .append(",\"description\":\"a short description of item ").append(i)
+                    .append("\"}");
+        }
+        builder.append("]}");
+        document = Map.of("rows", rows);
+        json = builder.toString().getBytes(StandardCharsets.UTF_8);
+        context.setGlobalJson("stored", json);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        runtime.close();
+    }
+
+    /**
+     * Sets the document as java map
+     */
+    @Benchmark
+    public void setGlobalMap() {
+        context.setGlobal("doc", document);
+    }
+
+    /**
+     * Sets the document as JSON
+     */
+    @Benchmark
+    public void setGlobalJson() {
+        context.setGlobalJson("doc", json);
+    }
+
+    /**
+     * Reads the document as JSON
+     *
+     * @return UTF-8 encoded JSON
+     */
+    @Benchmark
+    public byte[] getGlobalJson() {
+        return context.getGlobalJson("stored");
+    }
+}
@@ -0,0 +1,99 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures packing large argument graphs with the {@link MessagePackRegistry},
+ * which dispatches on the type of every single value, and unpacking them again.
+ * All wire formats are compared: 0 (tagged), 1 (compact) and 2 (compact with
+ * Latin-1 strings), with ASCII and with accented (Latin-1) text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessagePackBenchmark {
+    @Param({ "0", "1", "2" })
+    public int format;
+
+    @Param({ "ascii", "latin1" })
+    public String text;
+
+    private MessagePackRegistry registry;
+    private List<Map<String, Object>> rows;
+    private byte[] packed;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Packing plain java values does not require a context
+        registry = new MessagePackRegistry(null, format);
+        rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            final Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", ("ascii".equals(text) ? "item " : "crème brûlée ") + i);
+            row.put("price", i * 0.5);
+            row.put("active", i % 2 == 0);
+            row.put("tags", List.of("a", "b"));
+            final Map<String, Object> nested = new LinkedHashMap<>();
+            nested.put("x", i);
+            nested.put("y", List.of(i, i + 1));
+            row.put("nested", nested);
+            rows.add(row);
+        }
+        packed = registry.pack(rows);
+    }
+
+    /**
+     * Reports the size of the packed list as secondary result of
+     * {@link MessagePackBenchmark#packList(PackedSize)}
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PackedSize {
+        public long packedBytes;
+    }
+
+    /**
+     * Packs a list of 10k nested maps
+     *
+     * @param size receives the size of the packed list
+     * @return packed bytes
+     */
+    @Benchmark
+    public byte[] packList(PackedSize size) {
+        final byte[] result = registry.pack(rows);
+        size.packedBytes = result.length;
+        return result;
+    }
+
+    /**
+     * Unpacks a list of 10k nested maps
+     *
+     * @return unpacked list
+     */
+    @Benchmark
+    public Object unpackList() {
+        return registry.unpack(packed);
+    }
+}
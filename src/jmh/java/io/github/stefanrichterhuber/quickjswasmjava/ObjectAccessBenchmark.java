@@ -0,0 +1,91 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per call overhead of accessing native objects from java, e.g.
+ * writing the key to the wasm memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjectAccessBenchmark {
+    private static final String[] KEYS = { "id", "name", "price", "quantity" };
+
+    private QuickJSRuntime runtime;
+    private QuickJSContext context;
+    private QuickJSObject<String, Object> object;
+    private QuickJSObject<String, Object> config;
+    private QuickJSArray<Object> rows;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        runtime = new QuickJSRuntime();
+        context = runtime.createContext();
+        object = (QuickJSObject<String, Object>) context
+                .eval("({ id: 42, name: 'item', price: 12.5, quantity: 3 })");
+        config = (QuickJSObject<String, Object>) context
+                .eval("Object.fromEntries(Array.from({ length: 500 }, (_, i) => ['key' + i, i]))");
+        rows = (QuickJSArray<Object>) context.eval("Array.from({ length: 10000 }, (_, i) => i)");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        runtime.close();
+    }
+
+    /**
+     * Reads 1000 properties of a native object in a tight loop
+     *
+     * @param blackhole consumes the values
+     */
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (int i = 0; i < 1000; i++) {
+            blackhole.consume(object.get(KEYS[i & 3]));
+        }
+    }
+
+    /**
+     * Iterates all entries of a native object with 500 properties
+     *
+     * @param blackhole consumes the entries
+     */
+    @Benchmark
+    public void entrySet(Blackhole blackhole) {
+        for (var entry : config.entrySet()) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+    /**
+     * Iterates all elements of a native array with 10000 elements
+     *
+     * @param blackhole consumes the elements
+     */
+    @Benchmark
+    public void iterateArray(Blackhole blackhole) {
+        for (Object row : rows) {
+            blackhole.consume(row);
+        }
+    }
+}
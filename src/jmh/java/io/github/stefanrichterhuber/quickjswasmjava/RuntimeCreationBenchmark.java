@@ -0,0 +1,67 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dylibso.chicory.wasm.WasmModule;
+
+/**
+ * Measures the cost of creating a new {@link QuickJSRuntime}. Before the
+ * introduction of the {@link QuickJSRuntimeFactory} every runtime parsed the
+ * wasm module on its own, so the creation cost was the sum of
+ * {@link #parseModule()} and {@link #createRuntime()}. Run with
+ * {@code -prof gc} to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuntimeCreationBenchmark {
+
+    /**
+     * Parsing of the wasm module, done once per runtime before the factory was
+     * introduced
+     *
+     * @return the parsed module
+     */
+    @Benchmark
+    public WasmModule parseModule() {
+        return WasmLib.load();
+    }
+
+    /**
+     * Creation of a runtime from the shared, already parsed module
+     *
+     * @throws Exception
+     */
+    @Benchmark
+    public void createRuntime() throws Exception {
+        try (QuickJSRuntime runtime = QuickJSRuntimeFactory.getDefault().create()) {
+            runtime.getRuntimePointer();
+        }
+    }
+
+    /**
+     * Creation of a runtime with a context, the usual per request setup
+     *
+     * @throws Exception
+     */
+    @Benchmark
+    public void createRuntimeAndContext() throws Exception {
+        try (QuickJSRuntime runtime = QuickJSRuntimeFactory.getDefault().create();
+                QuickJSContext context = runtime.createContext()) {
+            context.getContextPointer();
+        }
+    }
+}
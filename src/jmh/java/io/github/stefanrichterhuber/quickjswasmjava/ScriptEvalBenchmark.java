@@ -0,0 +1,92 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluating the same script source again and again with
+ * {@link QuickJSContext#eval(String)} to running a script compiled once with
+ * {@link QuickJSContext#compile(String, String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptEvalBenchmark {
+    /**
+     * A small rule script, typical for scripts run very often
+     */
+    private static final String SCRIPT = """
+            function score(order) {
+                let total = 0;
+                for (const item of order.items) {
+                    total += item.price * item.quantity;
+                }
+                return total > 100 ? 'gold' : total > 50 ? 'silver' : 'bronze';
+            }
+            score({ items: [ { price: 12.5, quantity: 3 }, { price: 20, quantity: 2 }, { price: 3, quantity: limit } ] });
+            """;
+
+    private QuickJSRuntime runtime;
+    private QuickJSContext context;
+    private QuickJSScript script;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        runtime = new QuickJSRuntime();
+        context = runtime.createContext();
+        context.setGlobal("limit", 5);
+        script = context.compile(SCRIPT, "rule.js");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        runtime.close();
+    }
+
+    /**
+     * Parses, compiles and runs the script on every call
+     *
+     * @return result of the script
+     */
+    @Benchmark
+    public Object eval() {
+        return context.eval(SCRIPT);
+    }
+
+    /**
+     * Runs the script compiled once
+     *
+     * @return result of the script
+     */
+    @Benchmark
+    public Object run() {
+        return script.run();
+    }
+
+    /**
+     * Runs the script compiled once, setting the bindings on every call
+     *
+     * @return result of the script
+     */
+    @Benchmark
+    public Object runWithBindings() {
+        return script.run(Map.of("limit", 5));
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Size-bounded LRU cache mapping script sources to their compiled QuickJS
+ * bytecode. If a cache is set with
+ * {@link QuickJSRuntime#withBytecodeCache(BytecodeCache)},
+ * {@link QuickJSContext#eval(String)} only compiles scripts not yet in the
+ * cache and evaluates the cached bytecode otherwise.
+ *
+ * Entries are keyed by the SHA-256 hash of the source. The cache stores
+ * serialized bytecode, which is independent of a specific context, so one
+ * cache can be shared by all contexts of a runtime and by all runtimes of a
+ * {@link QuickJSRuntimePool}. The cache is bounded by the total size of the
+ * bytecode, not the number of entries. This class is thread-safe.
+ */
+public final class BytecodeCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Maximum total size of the cached bytecode in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Cached bytecode, in access order
+     */
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Total size of the cached bytecode in bytes
+     */
+    private long size;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxBytes Maximum total size of the cached bytecode in bytes
+     */
+    public BytecodeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum size of the bytecode cache must be greater than 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Calculates the cache key of the given script
+     *
+     * @param script Source of the script
+     * @return cache key
+     */
+    static String key(String script) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached bytecode for the given key
+     *
+     * @param key Cache key, see {@link #key(String)}
+     * @return cached bytecode or null if not found
+     */
+    synchronized byte[] get(String key) {
+        final byte[] bytecode = entries.get(key);
+        if (bytecode != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return bytecode;
+    }
+
+    /**
+     * Adds bytecode to the cache. Evicts the least recently used entries until the
+     * cache fits into its maximum size.
+     *
+     * @param key      Cache key, see {@link #key(String)}
+     * @param bytecode Bytecode to cache
+     */
+    synchronized void put(String key, byte[] bytecode) {
+        if (bytecode.length > maxBytes) {
+            LOGGER.debug("Bytecode of {} bytes exceeds the size of the bytecode cache, not cached", bytecode.length);
+            return;
+        }
+        final byte[] previous = entries.put(key, bytecode);
+        if (previous != null) {
+            size -= previous.length;
+        }
+        size += bytecode.length;
+
+        final Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            final Map.Entry<String, byte[]> eldest = it.next();
+            size -= eldest.getValue().length;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all entries from the cache. The counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the maximum total size of the cached bytecode
+     *
+     * @return maximum size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the total size of the cached bytecode
+     *
+     * @return size in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of cached scripts
+     *
+     * @return number of cached scripts
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups served from the cache
+     *
+     * @return number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups not found in the cache
+     *
+     * @return number of cache misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries evicted to keep the cache within its maximum
+     * size
+     *
+     * @return number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("BytecodeCache[entries=%d, size=%d/%d bytes, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), size, maxBytes, hits, misses, evictions);
+    }
+}
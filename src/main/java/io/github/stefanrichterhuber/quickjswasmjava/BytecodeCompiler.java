@@ -0,0 +1,150 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Precompiles JavaScript files to QuickJS bytecode at build time. All
+ * {@code **}{@code /*.js} files of a source directory are compiled to
+ * {@code META-INF/quickjs/<path>.qjsbc} in the output directory (usually
+ * {@code target/classes}), so they are shipped as classpath resources and can
+ * be evaluated with {@link QuickJSContext#evalPrecompiled(String)} without
+ * parsing them at runtime.
+ * <p>
+ * Usage: {@code BytecodeCompiler <source directory> <output directory>}, e.g.
+ * from the {@code exec-maven-plugin} (see the {@code precompile-js} profile of
+ * this project).
+ */
+public final class BytecodeCompiler {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Classpath location of precompiled scripts
+     */
+    static final String RESOURCE_PREFIX = "META-INF/quickjs/";
+
+    /**
+     * File extension of precompiled scripts
+     */
+    static final String EXTENSION = ".qjsbc";
+
+    /**
+     * Precompiled scripts already loaded, per class loader
+     */
+    private static final Map<ClassLoader, Map<String, byte[]>> LOADED = new WeakHashMap<>();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Loads a precompiled script from the classpath. Scripts are read only once
+     * per class loader.
+     *
+     * @param classLoader Class loader to load the script from
+     * @param name        Name of the script
+     * @return bytecode of the script
+     * @throws IllegalArgumentException if the script is not found
+     */
+    static byte[] load(ClassLoader classLoader, String name) {
+        final String resource = resourceName(name);
+        synchronized (LOADED) {
+            final Map<String, byte[]> scripts = LOADED.computeIfAbsent(classLoader, cl -> new HashMap<>());
+            final byte[] loaded = scripts.get(resource);
+            if (loaded != null) {
+                return loaded;
+            }
+            try (InputStream in = classLoader.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalArgumentException("Precompiled script " + name + " not found (" + resource + ")");
+                }
+                final byte[] bytecode = in.readAllBytes();
+                scripts.put(resource, bytecode);
+                LOGGER.debug("Loaded precompiled script {} ({} bytes)", name, bytecode.length);
+                return bytecode;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load precompiled script " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the classpath resource of the precompiled script with the given name
+     *
+     * @param name Name of the script: its path relative to the source directory,
+     *             with or without the {@code .js} extension
+     * @return name of the classpath resource
+     */
+    static String resourceName(String name) {
+        final String path = name.endsWith(".js") ? name.substring(0, name.length() - 3) : name;
+        return RESOURCE_PREFIX + (path.startsWith("/") ? path.substring(1) : path) + EXTENSION;
+    }
+
+    /**
+     * Compiles all JavaScript files of the source directory
+     *
+     * @param sourceDirectory Directory containing the JavaScript files
+     * @param outputDirectory Directory to write the bytecode to
+     * @return number of compiled files
+     * @throws IOException      if reading or writing a file fails
+     * @throws QuickJSException if a file contains syntax errors
+     */
+    public static int compile(Path sourceDirectory, Path outputDirectory) throws IOException {
+        if (!Files.isDirectory(sourceDirectory)) {
+            LOGGER.info("No JavaScript sources found in {}", sourceDirectory);
+            return 0;
+        }
+        final List<Path> sources;
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            sources = files.filter(Files::isRegularFile).filter(f -> f.getFileName().toString().endsWith(".js"))
+                    .sorted().toList();
+        }
+
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            for (Path source : sources) {
+                // Use '/' as separator on all platforms, it is part of the resource name
+                final String name = sourceDirectory.relativize(source).toString().replace('\\', '/');
+                final String script = Files.readString(source, StandardCharsets.UTF_8);
+                final byte[] bytecode = context.compileToBytecode(script, name);
+
+                final Path target = outputDirectory.resolve(resourceName(name));
+                Files.createDirectories(target.getParent());
+                Files.write(target, bytecode);
+                LOGGER.info("Compiled {} to {} ({} bytes)", name, target, bytecode.length);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Closing the runtime failed
+            throw new IllegalStateException(e);
+        }
+        return sources.size();
+    }
+
+    /**
+     * Compiles all JavaScript files of a source directory to bytecode
+     *
+     * @param args source directory and output directory
+     * @throws IOException              if reading or writing a file fails
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Usage: BytecodeCompiler <source directory> <output directory>");
+        }
+        final int count = compile(Path.of(args[0]), Path.of(args[1]));
+        LOGGER.info("Precompiled {} JavaScript files", count);
+    }
+}
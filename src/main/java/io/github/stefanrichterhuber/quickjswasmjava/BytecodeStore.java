@@ -0,0 +1,38 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Persistent storage of compiled QuickJS bytecode, keyed by the hash of the
+ * script source. If a store is set with
+ * {@link QuickJSRuntime#withBytecodeStore(BytecodeStore)},
+ * {@link QuickJSContext#eval(String)} first looks up the bytecode of a script
+ * in the store and only compiles (and stores) scripts not found. In contrast to
+ * the in-memory {@link BytecodeCache}, a store can survive JVM restarts and be
+ * shared between processes.
+ *
+ * Stored bytecode contains the fingerprint of the wasm module it was compiled
+ * by, bytecode of a different wasm module is ignored. Implementations must be
+ * thread-safe.
+ */
+public interface BytecodeStore {
+    /**
+     * Loads stored bytecode
+     *
+     * @param key Key of the bytecode (hex encoded SHA-256 hash of the source)
+     * @return the stored bytecode or null if not found. The returned buffer might
+     *         be memory mapped and is only read.
+     * @throws IOException if reading the bytecode fails
+     */
+    ByteBuffer load(String key) throws IOException;
+
+    /**
+     * Stores bytecode
+     *
+     * @param key      Key of the bytecode (hex encoded SHA-256 hash of the source)
+     * @param bytecode Bytecode to store
+     * @throws IOException if storing the bytecode fails
+     */
+    void store(String key, byte[] bytecode) throws IOException;
+}
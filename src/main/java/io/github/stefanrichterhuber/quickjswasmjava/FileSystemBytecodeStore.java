@@ -0,0 +1,216 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link BytecodeStore} keeping each compiled script as a file in a directory,
+ * named by the hash of its source. The directory can be shared by multiple
+ * processes:
+ * <ul>
+ * <li>Files are written to a temporary file first and then atomically moved to
+ * their final name, so readers never see partially written bytecode.</li>
+ * <li>Files are read by memory mapping them, so they are never read into a
+ * single heap array. They are still copied into the wasm memory in chunks (and
+ * into the heap as a whole if a {@link BytecodeCache} is configured).</li>
+ * <li>If the total size of all files exceeds the configured maximum, the least
+ * recently used files (by modification time) are deleted. The modification
+ * time is updated on reads at most once per {@link #TOUCH_INTERVAL} per file
+ * and process, so cache hits usually do not write any file metadata.</li>
+ * </ul>
+ */
+public final class FileSystemBytecodeStore implements BytecodeStore {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * File extension of stored bytecode
+     */
+    private static final String EXTENSION = ".qjsbc";
+
+    /**
+     * Valid keys (hex encoded hashes), prevents path traversal with malicious keys
+     */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-fA-F]{1,128}");
+
+    /**
+     * Minimum time in milliseconds between two updates of the modification time
+     * of the same file
+     */
+    static final long TOUCH_INTERVAL = 60_000;
+
+    /**
+     * Directory containing the bytecode files
+     */
+    private final Path directory;
+
+    /**
+     * Maximum total size of all bytecode files in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Time (in milliseconds) the modification time of the files was last updated
+     * by this store, by key
+     */
+    private final Map<String, Long> lastTouched = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new store in the given directory. The directory is created if it
+     * does not exist.
+     *
+     * @param directory Directory to store the bytecode files in
+     * @param maxBytes  Maximum total size of all bytecode files in bytes
+     * @throws IOException if the directory can't be created
+     */
+    public FileSystemBytecodeStore(Path directory, long maxBytes) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory of the bytecode store must not be null");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum size of the bytecode store must be greater than 0");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public ByteBuffer load(String key) throws IOException {
+        final Path file = fileOf(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            final ByteBuffer bytecode = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            touch(key, file);
+            return bytecode;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void store(String key, byte[] bytecode) throws IOException {
+        final Path file = fileOf(key);
+        final Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(tmp, bytecode);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        lastTouched.put(key, System.currentTimeMillis());
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used files until the total size of all files is
+     * within the maximum size.
+     *
+     * @throws IOException if listing the directory fails
+     */
+    private void evict() throws IOException {
+        record StoredFile(Path path, long size, FileTime lastModified) {
+        }
+
+        final List<StoredFile> files = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (!path.getFileName().toString().endsWith(EXTENSION)) {
+                    continue;
+                }
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    files.add(new StoredFile(path, attributes.size(), attributes.lastModifiedTime()));
+                    total += attributes.size();
+                } catch (NoSuchFileException e) {
+                    // Concurrently evicted by another process
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        files.sort(Comparator.comparing(StoredFile::lastModified));
+        for (StoredFile file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(file.path());
+                final String name = file.path().getFileName().toString();
+                lastTouched.remove(name.substring(0, name.length() - EXTENSION.length()));
+                total -= file.size();
+                LOGGER.debug("Evicted bytecode file {} ({} bytes)", file.path(), file.size());
+            } catch (IOException e) {
+                // e.g. still mapped on some platforms, try again with the next eviction
+                LOGGER.debug("Failed to evict bytecode file {}", file.path(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks the file as recently used, unless this was already done within the
+     * last {@link #TOUCH_INTERVAL}
+     *
+     * @param key  Key of the bytecode
+     * @param file File to mark
+     */
+    private void touch(String key, Path file) {
+        final long now = System.currentTimeMillis();
+        final Long last = lastTouched.get(key);
+        if (last != null && now - last < TOUCH_INTERVAL) {
+            return;
+        }
+        lastTouched.put(key, now);
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to update modification time of bytecode file {}", file, e);
+        }
+    }
+
+    /**
+     * Returns the file of the bytecode with the given key
+     *
+     * @param key Key of the bytecode
+     * @return file of the bytecode
+     */
+    private Path fileOf(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid bytecode key: " + key);
+        }
+        return directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * Returns the directory containing the bytecode files
+     *
+     * @return directory of this store
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+}
@@ -14,7 +14,7 @@ record MemoryLocation(long pointer, int length, QuickJSRuntime runtime) implemen
      */
     public void free() {
         LOGGER.debug("Freeing memory location at {} with length {}", pointer, length);
-        runtime.dealloc(pointer, length);
+        runtime.free(pointer, length);
     }
 
     @Override
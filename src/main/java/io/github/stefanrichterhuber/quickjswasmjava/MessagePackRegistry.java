@@ -2,6 +2,13 @@ package io.github.stefanrichterhuber.quickjswasmjava;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -20,45 +27,208 @@ import org.msgpack.value.ValueType;
 
 /**
  * Utility class to pack / unpack supported java object into the format common
- * with the native library
+ * with the native library.
+ * <p>
+ * Three wire formats are supported, negotiated with the native library at
+ * runtime creation:
+ * <ul>
+ * <li>{@link #FORMAT_TAGGED}: every value is a map with a single entry, keyed
+ * by the name of its type (<code>{"nativeObject": 42}</code>). null is just the
+ * string "null".</li>
+ * <li>{@link #FORMAT_COMPACT}: every value is the code of its type as single
+ * byte (a positive fixint), followed by the same payload. null is just its
+ * code.</li>
+ * <li>{@link #FORMAT_LATIN1}: the compact format, but strings with characters
+ * beyond ASCII, which all fit into Latin-1, are transferred as their raw
+ * Latin-1 bytes. For compact strings of the JVM these bytes are copied without
+ * any transcoding (the native library still transcodes them from / to
+ * UTF-8).</li>
+ * </ul>
+ * Values are packed in the format of the registry, but all formats are
+ * accepted when unpacking.
  */
 class MessagePackRegistry {
-    private static interface TypeHandler {
-        void pack(Object o, MessagePacker p) throws IOException;
+    /**
+     * Wire format with the name of the type as tag
+     */
+    static final int FORMAT_TAGGED = 0;
+    /**
+     * Wire format with the code of the type as single byte tag, version 1
+     */
+    static final int FORMAT_COMPACT = 1;
+    /**
+     * Wire format with the code of the type as single byte tag and Latin-1
+     * strings, version 2
+     */
+    static final int FORMAT_LATIN1 = 2;
 
+    /**
+     * Type codes in the compact format (the index of the variant of JSJavaProxy).
+     * Must match <code>msgpack::tag</code> of the native library.
+     */
+    private static final int CODE_NULL = 0;
+    private static final int CODE_UNDEFINED = 1;
+    private static final int CODE_STRING = 2;
+    private static final int CODE_INT = 3;
+    private static final int CODE_FLOAT = 4;
+    private static final int CODE_BOOLEAN = 5;
+    private static final int CODE_ARRAY = 6;
+    private static final int CODE_NATIVE_ARRAY = 7;
+    private static final int CODE_OBJECT = 8;
+    private static final int CODE_NATIVE_OBJECT = 9;
+    private static final int CODE_NATIVE_ARRAY_BUFFER = 10;
+    private static final int CODE_FUNCTION = 11;
+    private static final int CODE_JAVA_FUNCTION = 12;
+    private static final int CODE_EXCEPTION = 13;
+    private static final int CODE_COMPLETABLE_FUTURE = 14;
+    private static final int CODE_COMPILED_SCRIPT = 15;
+    private static final int CODE_BINARY = 16;
+    private static final int CODE_UINT8_ARRAY = 17;
+    private static final int CODE_INT32_ARRAY = 18;
+    private static final int CODE_FLOAT32_ARRAY = 19;
+    private static final int CODE_FLOAT64_ARRAY = 20;
+    private static final int CODE_BIG_INT64_ARRAY = 21;
+    private static final int CODE_LATIN1_STRING = 22;
+    private static final int MAX_CODE = 127;
+
+    /**
+     * Unpacks the payload of a type. Types only received from the native library
+     * (e.g. binary) are registered with an unpacker alone.
+     */
+    @FunctionalInterface
+    private static interface TypeUnpacker {
         Object unpack(MessageUnpacker u) throws IOException;
     }
 
-    private final Map<String, TypeHandler> handlers = new HashMap<>();
-    // Required to maintain order of registered handlers to find handlers for more
+    private static interface TypeHandler extends TypeUnpacker {
+        void pack(Object o, MessagePacker p) throws IOException;
+    }
+
+    /**
+     * Tag of a registered type in both formats
+     * 
+     * @param name Tag within the tagged format
+     * @param code Tag within the compact format
+     */
+    private static record Tag(String name, int code) {
+    }
+
+    /**
+     * Resolves the tag of concrete classes once and caches it. The first
+     * registered type the class is assignable to wins, so tags of more
+     * specialised objects (QuickJSArray) must be declared before generic ones
+     * (List). The mapping is the same for all registries, so a single resolver
+     * is shared by all of them.
+     */
+    private static final class TagResolver extends ClassValue<Tag> {
+        @Override
+        protected Tag computeValue(Class<?> type) {
+            for (Map.Entry<Class<?>, Tag> entry : CLASS_TO_TAG.entrySet()) {
+                if (entry.getKey().isAssignableFrom(type)) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    // Required to maintain order of declared tags to find tags for more
     // specialised object (QuickJSArray) before generic ones (List)
-    private final Map<Class<?>, String> classToTag = new LinkedHashMap<>();
+    private static final Map<Class<?>, Tag> CLASS_TO_TAG = new LinkedHashMap<>();
+    private static final TagResolver TAGS = new TagResolver();
+
+    // All tags with their java types, in the order they are resolved
+    private static final Tag STRING = tag("string", CODE_STRING, String.class);
+    private static final Tag FLOAT = tag("float", CODE_FLOAT, Double.class, Float.class);
+    private static final Tag BOOLEAN = tag("boolean", CODE_BOOLEAN, Boolean.class);
+    private static final Tag INT = tag("int", CODE_INT, Integer.class);
+    private static final Tag NATIVE_ARRAY = tag("nativeArray", CODE_NATIVE_ARRAY, QuickJSArray.class);
+    private static final Tag NATIVE_OBJECT = tag("nativeObject", CODE_NATIVE_OBJECT, QuickJSObject.class);
+    private static final Tag NATIVE_ARRAY_BUFFER = tag("nativeArrayBuffer", CODE_NATIVE_ARRAY_BUFFER,
+            QuickJSArrayBuffer.class);
+    private static final Tag ARRAY = tag("array", CODE_ARRAY, List.class);
+    private static final Tag OBJECT = tag("object", CODE_OBJECT, Map.class);
+    private static final Tag FUNCTION = tag("function", CODE_FUNCTION, QuickJSFunction.class);
+    private static final Tag COMPILED_SCRIPT = tag("compiledScript", CODE_COMPILED_SCRIPT, QuickJSScript.class);
+    private static final Tag BINARY = tag("binary", CODE_BINARY);
+    private static final Tag UINT8_ARRAY = tag("uint8Array", CODE_UINT8_ARRAY, byte[].class);
+    private static final Tag INT32_ARRAY = tag("int32Array", CODE_INT32_ARRAY, int[].class);
+    private static final Tag FLOAT32_ARRAY = tag("float32Array", CODE_FLOAT32_ARRAY, float[].class);
+    private static final Tag FLOAT64_ARRAY = tag("float64Array", CODE_FLOAT64_ARRAY, double[].class);
+    private static final Tag BIG_INT64_ARRAY = tag("bigInt64Array", CODE_BIG_INT64_ARRAY, long[].class);
+    private static final Tag LATIN1_STRING = tag("latin1String", CODE_LATIN1_STRING);
+    private static final Tag JAVA_FUNCTION = tag("javaFunction", CODE_JAVA_FUNCTION, Function.class);
+    private static final Tag EXCEPTION = tag("exception", CODE_EXCEPTION, Exception.class);
+    private static final Tag COMPLETABLE_FUTURE = tag("completableFuture", CODE_COMPLETABLE_FUTURE,
+            CompletionStage.class);
+
+    /**
+     * Declares a new tag and maps the given java types to it
+     * 
+     * @param name  Tag within the tagged format
+     * @param code  Tag within the compact format, must match the native library
+     * @param clazz Java types to map
+     * @return new tag
+     */
+    private static Tag tag(String name, int code, Class<?>... clazz) {
+        final Tag tag = new Tag(name, code);
+        for (Class<?> c : clazz) {
+            CLASS_TO_TAG.put(c, tag);
+        }
+        return tag;
+    }
+
+    private final Map<String, TypeUnpacker> unpackers = new HashMap<>();
+    // Unpackers and handlers indexed by the code of their type
+    private final TypeUnpacker[] unpackersByCode = new TypeUnpacker[MAX_CODE + 1];
+    private final TypeHandler[] handlersByCode = new TypeHandler[MAX_CODE + 1];
     private final QuickJSContext ctx;
+    private final int format;
 
     /**
-     * Registers a new pack / unpack handler for the given type(s)
+     * Registers the pack / unpack handler of the given tag
      * 
-     * @param tag     Tag within the packed structure
-     * @param clazz   List of java types to map
+     * @param tag     Tag to handle
      * @param handler Handler for packing / unpacking
      */
-    private void register(String tag, List<Class<?>> clazz, TypeHandler handler) {
-        handlers.put(tag, handler);
-
-        clazz.forEach(c -> {
-            classToTag.put(c, tag);
-        });
+    private void register(Tag tag, TypeHandler handler) {
+        registerUnpacker(tag, handler);
+        handlersByCode[tag.code()] = handler;
+    }
 
+    /**
+     * Registers the unpacker of the given tag, for types only received from the
+     * native library
+     * 
+     * @param tag      Tag to handle
+     * @param unpacker Unpacker of the payload
+     */
+    private void registerUnpacker(Tag tag, TypeUnpacker unpacker) {
+        unpackers.put(tag.name(), unpacker);
+        unpackersByCode[tag.code()] = unpacker;
     }
 
     /**
-     * Creates a new MessagePackRegistry instance for the given QuickJSContext
+     * Creates a new MessagePackRegistry instance for the given QuickJSContext,
+     * using the wire format negotiated by its runtime
      * 
      * @param ctx QuickJSContext to use
      */
     public MessagePackRegistry(QuickJSContext ctx) {
+        this(ctx, ctx != null ? ctx.getRuntime().getWireFormat() : FORMAT_TAGGED);
+    }
+
+    /**
+     * Creates a new MessagePackRegistry instance for the given QuickJSContext
+     * 
+     * @param ctx    QuickJSContext to use
+     * @param format Wire format to pack values with ({@link #FORMAT_TAGGED},
+     *               {@link #FORMAT_COMPACT} or {@link #FORMAT_LATIN1})
+     */
+    MessagePackRegistry(QuickJSContext ctx, int format) {
         this.ctx = ctx;
-        register("string", List.of(String.class), new TypeHandler() {
+        this.format = format;
+        register(STRING, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packString((String) o);
             }
@@ -68,7 +238,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("float", List.of(Double.class, Float.class), new TypeHandler() {
+        register(FLOAT, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packDouble(((Number) o).doubleValue());
             }
@@ -78,7 +248,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("boolean", List.of(Boolean.class), new TypeHandler() {
+        register(BOOLEAN, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packBoolean(((Boolean) o).booleanValue());
             }
@@ -88,7 +258,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("int", List.of(Integer.class), new TypeHandler() {
+        register(INT, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packInt(((Integer) o).intValue());
             }
@@ -98,7 +268,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("nativeArray", List.of(QuickJSArray.class), new TypeHandler() {
+        register(NATIVE_ARRAY, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packLong(((QuickJSArray<?>) o).getArrayPointer());
             }
@@ -109,7 +279,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("nativeObject", List.of(QuickJSObject.class), new TypeHandler() {
+        register(NATIVE_OBJECT, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packLong(((QuickJSObject<?, ?>) o).getObjectPointer());
             }
@@ -120,7 +290,18 @@ class MessagePackRegistry {
             }
         });
 
-        register("array", List.of(List.class), new TypeHandler() {
+        register(NATIVE_ARRAY_BUFFER, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                p.packLong(((QuickJSArrayBuffer) o).getArrayBufferPointer());
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                long pointer = u.unpackLong();
+                return new QuickJSArrayBuffer(MessagePackRegistry.this.ctx, pointer);
+            }
+        });
+
+        register(ARRAY, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packArrayHeader(((List<?>) o).size());
                 for (Object item : (List<?>) o) {
@@ -130,7 +311,7 @@ class MessagePackRegistry {
 
             public Object unpack(MessageUnpacker u) throws IOException {
                 int arraySize = u.unpackArrayHeader();
-                List<Object> array = new ArrayList<>();
+                List<Object> array = new ArrayList<>(arraySize);
                 for (int i = 0; i < arraySize; i++) {
                     array.add(MessagePackRegistry.this.unpack(u));
                 }
@@ -138,7 +319,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("object", List.of(Map.class), new TypeHandler() {
+        register(OBJECT, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packMapHeader(((Map<?, ?>) o).size());
                 for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
@@ -149,7 +330,7 @@ class MessagePackRegistry {
 
             public Object unpack(MessageUnpacker u) throws IOException {
                 int objectSize = u.unpackMapHeader();
-                Map<String, Object> object = new HashMap<>();
+                Map<String, Object> object = HashMap.newHashMap(objectSize);
                 for (int i = 0; i < objectSize; i++) {
                     String key = u.unpackString();
                     object.put(key, MessagePackRegistry.this.unpack(u));
@@ -158,7 +339,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("function", List.of(QuickJSFunction.class), new TypeHandler() {
+        register(FUNCTION, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packArrayHeader(2);
                 p.packString(((QuickJSFunction) o).getName());
@@ -176,7 +357,126 @@ class MessagePackRegistry {
             }
         });
 
-        register("javaFunction", List.of(Function.class), new TypeHandler() {
+        register(COMPILED_SCRIPT, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                p.packArrayHeader(2);
+                p.packString(((QuickJSScript) o).getName());
+                p.packLong(((QuickJSScript) o).getScriptPointer());
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                int arraySize = u.unpackArrayHeader();
+                if (arraySize != 2) {
+                    throw new RuntimeException("Expected array with 2 element (script name, script ptr)");
+                }
+                String scriptName = u.unpackString();
+                long scriptPtr = u.unpackLong();
+                return new QuickJSScript(MessagePackRegistry.this.ctx, scriptName, scriptPtr);
+            }
+        });
+
+        // Binary data is only received from the native library (e.g. bytecode), so
+        // there are no java types to pack. byte[] is sent as uint8Array.
+        registerUnpacker(BINARY, u -> {
+            final int length = u.unpackBinaryHeader();
+            return u.readPayload(length);
+        });
+
+        // Primitive arrays are transferred as a whole as their raw little endian
+        // content, mapped to the typed arrays in JS
+        register(UINT8_ARRAY, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                final byte[] values = (byte[]) o;
+                p.packBinaryHeader(values.length);
+                p.writePayload(values);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                return u.readPayload(u.unpackBinaryHeader());
+            }
+        });
+
+        register(INT32_ARRAY, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                final int[] values = (int[]) o;
+                final ByteBuffer buffer = newLittleEndianBuffer(values.length * Integer.BYTES);
+                buffer.asIntBuffer().put(values);
+                packBuffer(buffer, p);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                final IntBuffer buffer = unpackBuffer(u).asIntBuffer();
+                final int[] values = new int[buffer.remaining()];
+                buffer.get(values);
+                return values;
+            }
+        });
+
+        register(FLOAT32_ARRAY, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                final float[] values = (float[]) o;
+                final ByteBuffer buffer = newLittleEndianBuffer(values.length * Float.BYTES);
+                buffer.asFloatBuffer().put(values);
+                packBuffer(buffer, p);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                final FloatBuffer buffer = unpackBuffer(u).asFloatBuffer();
+                final float[] values = new float[buffer.remaining()];
+                buffer.get(values);
+                return values;
+            }
+        });
+
+        register(FLOAT64_ARRAY, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                final double[] values = (double[]) o;
+                final ByteBuffer buffer = newLittleEndianBuffer(values.length * Double.BYTES);
+                buffer.asDoubleBuffer().put(values);
+                packBuffer(buffer, p);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                final DoubleBuffer buffer = unpackBuffer(u).asDoubleBuffer();
+                final double[] values = new double[buffer.remaining()];
+                buffer.get(values);
+                return values;
+            }
+        });
+
+        register(BIG_INT64_ARRAY, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                final long[] values = (long[]) o;
+                final ByteBuffer buffer = newLittleEndianBuffer(values.length * Long.BYTES);
+                buffer.asLongBuffer().put(values);
+                packBuffer(buffer, p);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                final LongBuffer buffer = unpackBuffer(u).asLongBuffer();
+                final long[] values = new long[buffer.remaining()];
+                buffer.get(values);
+                return values;
+            }
+        });
+
+        // Strings with only Latin-1 characters, only packed by pack(Object,
+        // MessagePacker) for FORMAT_LATIN1
+        register(LATIN1_STRING, new TypeHandler() {
+            public void pack(Object o, MessagePacker p) throws IOException {
+                // For compact strings this is a plain copy of the internal array
+                final byte[] bytes = ((String) o).getBytes(StandardCharsets.ISO_8859_1);
+                p.packBinaryHeader(bytes.length);
+                p.writePayload(bytes);
+            }
+
+            public Object unpack(MessageUnpacker u) throws IOException {
+                final int length = u.unpackBinaryHeader();
+                return new String(u.readPayload(length), StandardCharsets.ISO_8859_1);
+            }
+        });
+
+        register(JAVA_FUNCTION, new TypeHandler() {
             @SuppressWarnings("unchecked")
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packArrayHeader(2);
@@ -202,7 +502,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("exception", List.of(Exception.class), new TypeHandler() {
+        register(EXCEPTION, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 p.packArrayHeader(2);
                 p.packString(((Exception) o).getMessage());
@@ -223,7 +523,7 @@ class MessagePackRegistry {
             }
         });
 
-        register("completableFuture", List.of(CompletionStage.class), new TypeHandler() {
+        register(COMPLETABLE_FUTURE, new TypeHandler() {
             public void pack(Object o, MessagePacker p) throws IOException {
                 if (o instanceof CompletionStage cf) {
                     // Ensure the completablefuture is properly wrapped
@@ -269,6 +569,58 @@ class MessagePackRegistry {
 
     }
 
+    /**
+     * Checks if the string consists only of Latin-1 characters and contains at
+     * least one character beyond ASCII. Pure ASCII is identical in UTF-8 and
+     * Latin-1 and packed more compactly as a plain string.
+     * 
+     * @param value String to check
+     * @return true if the string is shorter in Latin-1 than in UTF-8
+     */
+    private static boolean isLatin1(String value) {
+        boolean ascii = true;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c > 0xFF) {
+                return false;
+            }
+            ascii &= c < 0x80;
+        }
+        return !ascii;
+    }
+
+    /**
+     * Creates a heap buffer in the byte order of the wasm memory (little endian)
+     * 
+     * @param size size of the buffer in bytes
+     * @return new buffer
+     */
+    private static ByteBuffer newLittleEndianBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Packs the content of a heap buffer as binary
+     * 
+     * @param buffer buffer to pack
+     * @param p      MessagePacker to use
+     */
+    private static void packBuffer(ByteBuffer buffer, MessagePacker p) throws IOException {
+        p.packBinaryHeader(buffer.capacity());
+        p.writePayload(buffer.array(), 0, buffer.capacity());
+    }
+
+    /**
+     * Unpacks a binary into a little endian buffer
+     * 
+     * @param u MessageUnpacker to use
+     * @return buffer with the content of the binary
+     */
+    private static ByteBuffer unpackBuffer(MessageUnpacker u) throws IOException {
+        final int length = u.unpackBinaryHeader();
+        return ByteBuffer.wrap(u.readPayload(length)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
     /**
      * Unpacks a java object from the given byte array containing a message
      * packed structure
@@ -284,6 +636,21 @@ class MessagePackRegistry {
         }
     }
 
+    /**
+     * Unpacks a java object directly from the memory of the wasm library. The
+     * memory location must be freed by the caller after this method returned.
+     * 
+     * @param location memory location containing the packed object
+     * @return The object
+     */
+    Object unpack(MemoryLocation location) {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(new WasmMemoryInput(location))) {
+            return this.unpack(unpacker);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to unpack object", e);
+        }
+    }
+
     /**
      * Unpacks a java object from the given MessageUnpacker
      * 
@@ -301,10 +668,21 @@ class MessagePackRegistry {
         if (type == ValueType.MAP) {
             unpacker.unpackMapHeader(); // Should be 1
             String tag = unpacker.unpackString();
-            TypeHandler handler = handlers.get(tag);
-            if (handler == null)
+            TypeUnpacker typeUnpacker = unpackers.get(tag);
+            if (typeUnpacker == null)
                 throw new IOException("Unknown type tag: " + tag);
-            return handler.unpack(unpacker);
+            return typeUnpacker.unpack(unpacker);
+        }
+
+        if (type == ValueType.INTEGER) {
+            int code = unpacker.unpackInt();
+            if (code == CODE_NULL || code == CODE_UNDEFINED) {
+                return null;
+            }
+            TypeUnpacker typeUnpacker = code > 0 && code <= MAX_CODE ? unpackersByCode[code] : null;
+            if (typeUnpacker == null)
+                throw new IOException("Unknown type code: " + code);
+            return typeUnpacker.unpack(unpacker);
         }
         return null;
     }
@@ -328,6 +706,32 @@ class MessagePackRegistry {
         }
     }
 
+    /**
+     * Packs the object content directly into the memory of the wasm library,
+     * without collecting the packed bytes on the java heap first
+     * 
+     * @param obj     Object to pack (null values supported)
+     * @param runtime Runtime to write the packed object to
+     * @param scratch True to use the scratch arena of the runtime (only for values
+     *                not handed over to the wasm library)
+     * @return memory location of the packed object, must be freed by the caller
+     */
+    MemoryLocation pack(Object obj, QuickJSRuntime runtime, boolean scratch) {
+        final WasmMemoryOutput out = new WasmMemoryOutput(runtime, scratch);
+        try {
+            try (final MessagePacker packer = MessagePack.newDefaultPacker(out)) {
+                pack(obj, packer);
+            }
+            return out.toMemoryLocation();
+        } catch (IOException e) {
+            out.free();
+            throw new RuntimeException("Unable to pack object: " + obj, e);
+        } catch (RuntimeException e) {
+            out.free();
+            throw e;
+        }
+    }
+
     /**
      * Packs the object content into a MessagePacker
      * 
@@ -337,19 +741,32 @@ class MessagePackRegistry {
      */
     void pack(Object obj, MessagePacker packer) throws IOException {
         if (obj == null) {
-            packer.packString("null");
+            if (format >= FORMAT_COMPACT) {
+                packer.packInt(CODE_NULL);
+            } else {
+                packer.packString("null");
+            }
             return;
         }
 
-        // Find the best matching tag based on class hierarchy
-        String tag = classToTag.entrySet().stream()
-                .filter(entry -> entry.getKey().isInstance(obj))
-                .map(Map.Entry::getValue)
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("No handler for " + obj.getClass()));
+        // Find the best matching tag based on class hierarchy (cached per class)
+        final Tag tag = TAGS.get(obj.getClass());
+        if (tag == null) {
+            throw new RuntimeException("No handler for " + obj.getClass());
+        }
 
-        packer.packMapHeader(1);
-        packer.packString(tag);
-        handlers.get(tag).pack(obj, packer);
+        if (format >= FORMAT_LATIN1 && obj instanceof String s && isLatin1(s)) {
+            packer.packInt(CODE_LATIN1_STRING);
+            handlersByCode[CODE_LATIN1_STRING].pack(s, packer);
+            return;
+        }
+
+        if (format >= FORMAT_COMPACT) {
+            packer.packInt(tag.code());
+        } else {
+            packer.packMapHeader(1);
+            packer.packString(tag.name());
+        }
+        handlersByCode[tag.code()].pack(obj, packer);
     }
 }
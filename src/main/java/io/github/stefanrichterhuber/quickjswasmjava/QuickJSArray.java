@@ -1,6 +1,14 @@
 package io.github.stefanrichterhuber.quickjswasmjava;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +25,11 @@ import com.dylibso.chicory.runtime.ExportFunction;
 public final class QuickJSArray<T> extends AbstractList<T> {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * Number of elements fetched with a single call by {@link #iterator()}
+     */
+    static final int DEFAULT_CHUNK_SIZE = 256;
+
     /**
      * The context this function belongs to.
      */
@@ -38,6 +51,14 @@ public final class QuickJSArray<T> extends AbstractList<T> {
 
     private final ExportFunction close;
 
+    private final ExportFunction getRange;
+
+    private final ExportFunction setRange;
+
+    private final ExportFunction addAll;
+
+    private final ExportFunction removeRange;
+
     /**
      * Creates a new native JS array
      * 
@@ -72,13 +93,17 @@ public final class QuickJSArray<T> extends AbstractList<T> {
      */
     QuickJSArray(final QuickJSContext context, long arrayPtr) {
         LOGGER.debug("Created wrapper for native JS array with pointer {}", arrayPtr);
-        this.size = context.getRuntime().getInstance().export("array_size_wasm");
-        this.add = context.getRuntime().getInstance().export("array_add_wasm");
-        this.set = context.getRuntime().getInstance().export("array_set_wasm");
-        // this.close = context.getRuntime().getInstance().export("array_close_wasm");
-        this.remove = context.getRuntime().getInstance().export("array_remove_wasm");
-        this.get = context.getRuntime().getInstance().export("array_get_wasm");
-        this.close = context.getRuntime().getInstance().export("array_close_wasm");
+        this.size = context.getRuntime().export("array_size_wasm");
+        this.add = context.getRuntime().export("array_add_wasm");
+        this.set = context.getRuntime().export("array_set_wasm");
+        // this.close = context.getRuntime().export("array_close_wasm");
+        this.remove = context.getRuntime().export("array_remove_wasm");
+        this.get = context.getRuntime().export("array_get_wasm");
+        this.close = context.getRuntime().export("array_close_wasm");
+        this.getRange = context.getRuntime().export("array_get_range_wasm");
+        this.setRange = context.getRuntime().export("array_set_range_wasm");
+        this.addAll = context.getRuntime().export("array_add_all_wasm");
+        this.removeRange = context.getRuntime().export("array_remove_range_wasm");
 
         this.arrayPtr = arrayPtr;
         this.context = context;
@@ -93,7 +118,7 @@ public final class QuickJSArray<T> extends AbstractList<T> {
      * @return native pointer to the js array
      */
     private static long createNativeArray(QuickJSContext context) {
-        ExportFunction create = context.getRuntime().getInstance().export("array_create_wasm");
+        ExportFunction create = context.getRuntime().export("array_create_wasm");
         long[] result = create.apply(context.getContextPointer());
         if (result[0] == 0l) {
             throw new IllegalStateException("Failed to create native array");
@@ -221,6 +246,191 @@ public final class QuickJSArray<T> extends AbstractList<T> {
         return oldValue;
     }
 
+    /**
+     * Returns a copy of the elements from index from (inclusive) to index to
+     * (exclusive), fetched with a single call.
+     * 
+     * @param from index of the first element
+     * @param to   index after the last element
+     * @return copy of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getRange(int from, int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range: " + from + " - " + to);
+        }
+        return (List<T>) fetchRange(from, to);
+    }
+
+    /**
+     * Fetches the elements from index from (inclusive) to index to (exclusive),
+     * without checking the bounds. The range is cut at the end of the array.
+     * 
+     * @param from index of the first element
+     * @param to   index after the last element
+     * @return copy of the elements
+     */
+    private List<?> fetchRange(int from, int to) {
+        final long[] result = getRange.apply(getContextPointer(), getArrayPointer(), from, to);
+
+        try (final MemoryLocation resultLocation = MemoryLocation.unpack(result[0], context.getRuntime())) {
+            final Object r = context.unpackObjectFromMemory(resultLocation);
+            if (r instanceof RuntimeException) {
+                throw (RuntimeException) r;
+            } else if (r instanceof List) {
+                return (List<?>) r;
+            } else {
+                throw new RuntimeException("Result is not a list");
+            }
+        }
+    }
+
+    /**
+     * Replaces the elements starting at the given index with the given values
+     * with a single call. The array grows if necessary.
+     * 
+     * @param index  index of the first element to replace
+     * @param values values to set
+     */
+    public void setRange(int index, List<? extends T> values) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        try (final MemoryLocation valuesLocation = this.context.writeToMemory(asPlainList(values))) {
+            this.setRange.apply(this.getContextPointer(), this.getArrayPointer(), index, valuesLocation.pointer(),
+                    valuesLocation.length());
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> values) {
+        return addAll(size(), values);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> values) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        if (values.isEmpty()) {
+            return false;
+        }
+        try (final MemoryLocation valuesLocation = this.context.writeToMemory(asPlainList(values))) {
+            this.addAll.apply(this.getContextPointer(), this.getArrayPointer(), index, valuesLocation.pointer(),
+                    valuesLocation.length());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values as list, which is transferred element by element (and not
+     * as handle to a native array)
+     * 
+     * @param values values to transfer
+     * @return list of the values
+     */
+    private static List<?> asPlainList(Collection<?> values) {
+        if (values instanceof List && !(values instanceof QuickJSArray)) {
+            return (List<?>) values;
+        }
+        return new ArrayList<>(values);
+    }
+
+    @Override
+    protected void removeRange(int from, int to) {
+        this.removeRange.apply(this.getContextPointer(), this.getArrayPointer(), from, to);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return fetchRange(0, size()).toArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A> A[] toArray(A[] a) {
+        final List<?> values = fetchRange(0, size());
+        if (a.length < values.size()) {
+            return Arrays.copyOf(values.toArray(), values.size(), (Class<? extends A[]>) a.getClass());
+        }
+        return values.toArray(a);
+    }
+
+    /**
+     * Returns an iterator fetching {@value #DEFAULT_CHUNK_SIZE} elements with a
+     * single call.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return iterator(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Returns an iterator fetching the given number of elements with a single
+     * call. The elements of each chunk are copies at the time they are fetched.
+     * 
+     * @param chunkSize number of elements fetched with a single call
+     * @return iterator over the elements
+     */
+    public Iterator<T> iterator(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be greater than 0");
+        }
+        return new Iterator<T>() {
+            /**
+             * Elements fetched with the last call
+             */
+            private List<?> chunk = List.of();
+            /**
+             * Index of the first element of the chunk within the array
+             */
+            private int chunkStart = 0;
+            /**
+             * Index of the next element within the array
+             */
+            private int cursor = 0;
+            private int lastReturned = -1;
+
+            @Override
+            public boolean hasNext() {
+                if (cursor - chunkStart < chunk.size()) {
+                    return true;
+                }
+                chunkStart = cursor;
+                chunk = fetchRange(cursor, cursor + chunkSize);
+                return !chunk.isEmpty();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = cursor;
+                return (T) chunk.get(cursor++ - chunkStart);
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned < 0) {
+                    throw new IllegalStateException();
+                }
+                QuickJSArray.this.remove(lastReturned);
+                // Refetch the remaining elements, since they have been shifted
+                chunk = List.of();
+                chunkStart = lastReturned;
+                cursor = lastReturned;
+                lastReturned = -1;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object other) {
@@ -0,0 +1,341 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.nio.ByteBuffer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Memory;
+
+/**
+ * Java wrapper of a native JS ArrayBuffer. The content is never serialized:
+ * all accessors read and write the backing store of the buffer directly within
+ * the linear memory of the wasm instance, so changes are immediately visible in
+ * JS and vice versa. Multi-byte values are little endian, like typed arrays in
+ * JS.
+ * <p>
+ * The location of the backing store is resolved once and cached until JS runs
+ * the next time (see {@link QuickJSRuntime#getGeneration()}), so repeated
+ * accesses in between do not call into the native library. Addresses within the
+ * linear memory do not change when it grows, so only JS can invalidate the
+ * location: buffers detached or transferred by JS are detected on the next
+ * access. A detached buffer has a byte length of 0.
+ */
+public final class QuickJSArrayBuffer {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The context this buffer belongs to.
+     */
+    private final QuickJSContext context;
+    /**
+     * The pointer to the js array buffer in the wasm library.
+     */
+    private long bufferPtr;
+
+    private final ExportFunction data;
+
+    /**
+     * Cached location of the backing store (see {@link #location()}) and the
+     * generation of the runtime it was resolved in
+     */
+    private long location;
+    private long locationGeneration = -1;
+
+    private final ExportFunction close;
+
+    /**
+     * Creates a new native JS ArrayBuffer of the given size, filled with zeros
+     *
+     * @param context QuickJS context
+     * @param size    Size of the buffer in bytes
+     */
+    public QuickJSArrayBuffer(final QuickJSContext context, final int size) {
+        this(context, createNativeArrayBuffer(context, size));
+    }
+
+    /**
+     * Creates a new native JS ArrayBuffer and copies the given bytes into it
+     *
+     * @param context QuickJS context
+     * @param content Initial content of the buffer
+     */
+    public QuickJSArrayBuffer(final QuickJSContext context, final byte[] content) {
+        this(context, content.length);
+        this.write(0, content);
+    }
+
+    /**
+     * Creates a java wrapper of an existing native JS ArrayBuffer
+     *
+     * @param context   QuickJS context
+     * @param bufferPtr Pointer to the native array buffer
+     */
+    QuickJSArrayBuffer(final QuickJSContext context, long bufferPtr) {
+        LOGGER.debug("Created wrapper for native JS array buffer with pointer {}", bufferPtr);
+        this.data = context.getRuntime().getInstance().export("array_buffer_data_wasm");
+        this.close = context.getRuntime().export("array_buffer_close_wasm");
+
+        this.bufferPtr = bufferPtr;
+        this.context = context;
+
+        this.context.addDependentResource(this::close);
+    }
+
+    /**
+     * Creates a native array buffer in the js runtime for the given context
+     *
+     * @param context QuickJS context
+     * @param size    Size of the buffer in bytes
+     * @return native pointer to the js array buffer
+     */
+    private static long createNativeArrayBuffer(QuickJSContext context, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        ExportFunction create = context.getRuntime().export("array_buffer_create_wasm");
+        long[] result = create.apply(context.getContextPointer(), size);
+        if (result[0] == 0l) {
+            throw new IllegalStateException("Failed to create native array buffer");
+        }
+        return result[0];
+    }
+
+    /**
+     * Returns the native pointer to the js array buffer
+     *
+     * @return native pointer to the js array buffer
+     */
+    long getArrayBufferPointer() {
+        if (bufferPtr == 0) {
+            throw new IllegalStateException("QuickJSArrayBuffer already closed");
+        }
+        return bufferPtr;
+    }
+
+    /**
+     * Closes this native array buffer, after that it is no longer usable!
+     *
+     * @throws Exception
+     */
+    private void close() throws Exception {
+        LOGGER.debug("Closing QuickJSArrayBuffer with pointer {}", bufferPtr);
+
+        if (bufferPtr == 0) {
+            LOGGER.debug("QuickJSArrayBuffer already closed!");
+            return;
+        }
+        try {
+            this.close.apply(this.context.getContextPointer(), this.getArrayBufferPointer());
+        } catch (Exception e) {
+            // May fail
+            LOGGER.debug("Failed to close native array buffer", e);
+        }
+        bufferPtr = 0;
+    }
+
+    /**
+     * Returns the current location of the backing store within the linear memory.
+     * It is only resolved again if JS might have run since it was last resolved.
+     *
+     * @return Packed location of the backing store (pointer in the upper, length
+     *         in the lower 32 bits), 0 if the buffer is detached or empty
+     */
+    private long location() {
+        final long bufferPtr = this.getArrayBufferPointer();
+        final QuickJSRuntime runtime = this.context.getRuntime();
+        if (locationGeneration != runtime.getGeneration()) {
+            location = this.data.apply(this.context.getContextPointer(), bufferPtr)[0];
+            locationGeneration = runtime.getGeneration();
+        }
+        return location;
+    }
+
+    /**
+     * Resolves the address of the given range of the backing store
+     *
+     * @param offset Offset within the buffer
+     * @param length Length of the range
+     * @return Address of the range within the linear memory
+     */
+    private int address(int offset, int length) {
+        final long location = location();
+        final int size = (int) (location & 0xffffffffL);
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + offset + ", " + offset + " + " + length + ") out of bounds for length " + size);
+        }
+        return (int) (location >>> 32) + offset;
+    }
+
+    private Memory memory() {
+        return this.context.getRuntime().getInstance().memory();
+    }
+
+    /**
+     * Returns the size of this buffer in bytes
+     *
+     * @return Size of this buffer in bytes, 0 if it is detached
+     */
+    public int byteLength() {
+        return (int) (location() & 0xffffffffL);
+    }
+
+    /**
+     * Reads a single byte
+     *
+     * @param offset Offset within the buffer
+     * @return byte at the given offset
+     */
+    public byte getByte(int offset) {
+        return memory().read(address(offset, Byte.BYTES));
+    }
+
+    /**
+     * Writes a single byte
+     *
+     * @param offset Offset within the buffer
+     * @param value  Value to write
+     */
+    public void setByte(int offset, byte value) {
+        memory().writeByte(address(offset, Byte.BYTES), value);
+    }
+
+    /**
+     * Reads a little endian int
+     *
+     * @param offset Offset within the buffer in bytes
+     * @return int at the given offset
+     */
+    public int getInt(int offset) {
+        return memory().readInt(address(offset, Integer.BYTES));
+    }
+
+    /**
+     * Writes a little endian int
+     *
+     * @param offset Offset within the buffer in bytes
+     * @param value  Value to write
+     */
+    public void setInt(int offset, int value) {
+        memory().writeI32(address(offset, Integer.BYTES), value);
+    }
+
+    /**
+     * Reads a little endian float
+     *
+     * @param offset Offset within the buffer in bytes
+     * @return float at the given offset
+     */
+    public float getFloat(int offset) {
+        return memory().readFloat(address(offset, Float.BYTES));
+    }
+
+    /**
+     * Writes a little endian float
+     *
+     * @param offset Offset within the buffer in bytes
+     * @param value  Value to write
+     */
+    public void setFloat(int offset, float value) {
+        memory().writeF32(address(offset, Float.BYTES), value);
+    }
+
+    /**
+     * Reads a little endian double
+     *
+     * @param offset Offset within the buffer in bytes
+     * @return double at the given offset
+     */
+    public double getDouble(int offset) {
+        return memory().readDouble(address(offset, Double.BYTES));
+    }
+
+    /**
+     * Writes a little endian double
+     *
+     * @param offset Offset within the buffer in bytes
+     * @param value  Value to write
+     */
+    public void setDouble(int offset, double value) {
+        memory().writeF64(address(offset, Double.BYTES), value);
+    }
+
+    /**
+     * Reads a range of the buffer
+     *
+     * @param offset Offset within the buffer
+     * @param length Number of bytes to read
+     * @return Copy of the given range
+     */
+    public byte[] read(int offset, int length) {
+        return memory().readBytes(address(offset, length), length);
+    }
+
+    /**
+     * Reads the buffer starting at the given offset into the remaining space of
+     * the given ByteBuffer
+     *
+     * @param offset Offset within the buffer
+     * @param dst    ByteBuffer to fill. Its position is advanced by the number of
+     *               bytes read.
+     */
+    public void read(int offset, ByteBuffer dst) {
+        dst.put(read(offset, dst.remaining()));
+    }
+
+    /**
+     * Writes the given bytes into the buffer
+     *
+     * @param offset Offset within the buffer
+     * @param src    Bytes to write
+     */
+    public void write(int offset, byte[] src) {
+        write(offset, src, 0, src.length);
+    }
+
+    /**
+     * Writes a range of the given bytes into the buffer
+     *
+     * @param offset    Offset within the buffer
+     * @param src       Bytes to write
+     * @param srcOffset Offset within src
+     * @param length    Number of bytes to write
+     */
+    public void write(int offset, byte[] src, int srcOffset, int length) {
+        if (srcOffset < 0 || length < 0 || srcOffset > src.length - length) {
+            throw new IndexOutOfBoundsException("Invalid source range: " + srcOffset + ", " + length);
+        }
+        memory().write(address(offset, length), src, srcOffset, length);
+    }
+
+    /**
+     * Writes the remaining content of the given ByteBuffer into the buffer
+     *
+     * @param offset Offset within the buffer
+     * @param src    ByteBuffer to write. Its position is advanced by the number of
+     *               bytes written.
+     */
+    public void write(int offset, ByteBuffer src) {
+        final int length = src.remaining();
+        if (src.hasArray()) {
+            write(offset, src.array(), src.arrayOffset() + src.position(), length);
+            src.position(src.position() + length);
+        } else {
+            final byte[] content = new byte[length];
+            src.get(content);
+            write(offset, content);
+        }
+    }
+
+    /**
+     * Returns a copy of the whole content of the buffer
+     *
+     * @return Copy of the content
+     */
+    public byte[] toByteArray() {
+        final long location = location();
+        return memory().readBytes((int) (location >>> 32), (int) (location & 0xffffffffL));
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+
+/**
+ * Records changes to native JS objects and arrays (of the same context) and
+ * applies them with a single call into the native library. Unlike
+ * {@link QuickJSObject#put(Object, Object)} or
+ * {@link QuickJSArray#set(int, Object)} the previous values are not fetched.
+ * Values are only returned for explicitly requested reads (see
+ * {@link #get(QuickJSObject, Object)}).
+ *
+ * <pre>
+ * QuickJSBatch batch = context.batch();
+ * for (Map.Entry&lt;String, Object&gt; field : fields.entrySet()) {
+ *     batch.put(input, field.getKey(), field.getValue());
+ * }
+ * batch.apply();
+ * </pre>
+ */
+public final class QuickJSBatch {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * Operation codes, must match the native library
+     */
+    static final int OP_SET = 0;
+    static final int OP_REMOVE = 1;
+    static final int OP_ADD = 2;
+    static final int OP_GET = 3;
+
+    /**
+     * The context this batch belongs to.
+     */
+    private final QuickJSContext context;
+
+    private final ExportFunction applyBatch;
+
+    /**
+     * Recorded operations: operation code, target, key (or index) and value
+     */
+    private final List<List<Object>> operations = new ArrayList<>();
+
+    /**
+     * Number of recorded read operations
+     */
+    private int reads = 0;
+
+    /**
+     * Creates a new, empty batch. Use {@link QuickJSContext#batch()} instead.
+     *
+     * @param context QuickJS context
+     */
+    QuickJSBatch(final QuickJSContext context) {
+        this.context = context;
+        this.applyBatch = context.getRuntime().export("apply_batch_wasm");
+    }
+
+    /**
+     * Records an operation
+     *
+     * @param op     Operation code
+     * @param target Target object or array
+     * @param key    Key or index
+     * @param value  Value (might be null)
+     */
+    private void record(int op, Object target, Object key, Object value) {
+        if (target == null) {
+            throw new NullPointerException("Target must not be null");
+        }
+        operations.add(Arrays.asList(op, target, key, value));
+    }
+
+    /**
+     * Records setting the value of a key of an object
+     *
+     * @param <K>    Type of the keys
+     * @param <V>    Type of the values
+     * @param target Object to change
+     * @param key    Key to set. Must be a String, Number or Boolean.
+     * @param value  Value to set
+     * @return this batch for method chaining
+     */
+    public <K, V> QuickJSBatch put(QuickJSObject<K, V> target, K key, V value) {
+        QuickJSObject.assertValidKeyType(key);
+        record(OP_SET, target, key, value);
+        return this;
+    }
+
+    /**
+     * Records removing a key from an object
+     *
+     * @param target Object to change
+     * @param key    Key to remove. Must be a String, Number or Boolean.
+     * @return this batch for method chaining
+     */
+    public QuickJSBatch remove(QuickJSObject<?, ?> target, Object key) {
+        QuickJSObject.assertValidKeyType(key);
+        record(OP_REMOVE, target, key, null);
+        return this;
+    }
+
+    /**
+     * Records appending a value to an array
+     *
+     * @param <T>    Type of the values
+     * @param target Array to change
+     * @param value  Value to append
+     * @return this batch for method chaining
+     */
+    public <T> QuickJSBatch add(QuickJSArray<T> target, T value) {
+        record(OP_ADD, target, null, value);
+        return this;
+    }
+
+    /**
+     * Records setting the element at the given index of an array. The array grows
+     * if necessary.
+     *
+     * @param <T>    Type of the values
+     * @param target Array to change
+     * @param index  Index of the element
+     * @param value  Value to set
+     * @return this batch for method chaining
+     */
+    public <T> QuickJSBatch set(QuickJSArray<T> target, int index, T value) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        record(OP_SET, target, index, value);
+        return this;
+    }
+
+    /**
+     * Records removing the element at the given index from an array
+     *
+     * @param target Array to change
+     * @param index  Index of the element
+     * @return this batch for method chaining
+     */
+    public QuickJSBatch remove(QuickJSArray<?> target, int index) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+        record(OP_REMOVE, target, index, null);
+        return this;
+    }
+
+    /**
+     * Records reading the value of a key of an object. The value is read after
+     * all operations recorded before.
+     *
+     * @param target Object to read
+     * @param key    Key to read. Must be a String, Number or Boolean.
+     * @return Index of the value in the result of {@link #apply()}
+     */
+    public int get(QuickJSObject<?, ?> target, Object key) {
+        QuickJSObject.assertValidKeyType(key);
+        record(OP_GET, target, key, null);
+        return reads++;
+    }
+
+    /**
+     * Records reading the element at the given index of an array. The value is
+     * read after all operations recorded before.
+     *
+     * @param target Array to read
+     * @param index  Index of the element
+     * @return Index of the value in the result of {@link #apply()}
+     */
+    public int get(QuickJSArray<?> target, int index) {
+        record(OP_GET, target, index, null);
+        return reads++;
+    }
+
+    /**
+     * Returns the number of recorded operations
+     *
+     * @return number of recorded operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Applies all recorded operations with a single call and clears this batch.
+     * The first failing operation aborts the batch, all operations recorded before
+     * it have been applied.
+     *
+     * @return Values of all recorded reads, in the order they were recorded
+     * @throws QuickJSException if an operation failed
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> apply() {
+        if (operations.isEmpty()) {
+            return List.of();
+        }
+        LOGGER.debug("Applying batch of {} operations", operations.size());
+
+        try (final MemoryLocation operationsLocation = this.context.writeToMemory(operations)) {
+            final long[] result = applyBatch.apply(this.context.getContextPointer(), operationsLocation.pointer(),
+                    operationsLocation.length());
+
+            try (final MemoryLocation resultLocation = MemoryLocation.unpack(result[0], context.getRuntime())) {
+                final Object r = context.unpackObjectFromMemory(resultLocation);
+                if (r instanceof RuntimeException) {
+                    throw (RuntimeException) r;
+                } else if (r instanceof List) {
+                    return (List<Object>) r;
+                } else {
+                    throw new RuntimeException("Result is not a list");
+                }
+            }
+        } finally {
+            operations.clear();
+            reads = 0;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Format of serialized QuickJS bytecode. The raw bytecode written by the wasm
+ * library is prefixed by a header containing the fingerprint of the wasm
+ * module. QuickJS bytecode is only valid for the exact QuickJS build it was
+ * written by and reading invalid bytecode is not safe, therefore bytecode of a
+ * different wasm module is rejected before it reaches the wasm library.
+ */
+final class QuickJSBytecode {
+    /**
+     * Magic bytes of serialized bytecode ("QJSB")
+     */
+    private static final int MAGIC = 0x514A5342;
+
+    /**
+     * Version of the header format
+     */
+    private static final int VERSION = 1;
+
+    private QuickJSBytecode() {
+    }
+
+    /**
+     * Prefixes the raw bytecode with the header
+     *
+     * @param moduleFingerprint Fingerprint of the wasm module the bytecode was
+     *                          written by
+     * @param bytecode          Raw bytecode
+     * @return bytecode with header
+     */
+    static byte[] wrap(String moduleFingerprint, byte[] bytecode) {
+        final byte[] fingerprint = moduleFingerprint.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES * 3 + fingerprint.length + bytecode.length)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(fingerprint.length)
+                .put(fingerprint)
+                .put(bytecode)
+                .array();
+    }
+
+    /**
+     * Validates the header and returns the raw bytecode
+     *
+     * @param moduleFingerprint Fingerprint of the wasm module to read the bytecode
+     * @param data              bytecode with header
+     * @return raw bytecode
+     * @throws IllegalArgumentException if the data is no serialized bytecode or
+     *                                  it was written by a different wasm module
+     */
+    static byte[] unwrap(String moduleFingerprint, byte[] data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Bytecode must not be null");
+        }
+        final ByteBuffer raw = unwrap(moduleFingerprint, ByteBuffer.wrap(data));
+        return Arrays.copyOfRange(data, raw.position(), data.length);
+    }
+
+    /**
+     * Validates the header and returns the raw bytecode
+     *
+     * @param moduleFingerprint Fingerprint of the wasm module to read the bytecode
+     * @param data              bytecode with header (e.g. memory mapped)
+     * @return view of the raw bytecode within the given buffer
+     * @throws IllegalArgumentException if the data is no serialized bytecode or
+     *                                  it was written by a different wasm module
+     */
+    static ByteBuffer unwrap(String moduleFingerprint, ByteBuffer data) {
+        final ByteBuffer buffer = data.duplicate();
+        if (buffer.remaining() < Integer.BYTES * 3 || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Data does not contain QuickJS bytecode");
+        }
+        final int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported QuickJS bytecode version " + version);
+        }
+        final int fingerprintLength = buffer.getInt();
+        if (fingerprintLength < 0 || fingerprintLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Data does not contain QuickJS bytecode");
+        }
+        final byte[] fingerprintBytes = new byte[fingerprintLength];
+        buffer.get(fingerprintBytes);
+        final String fingerprint = new String(fingerprintBytes, StandardCharsets.UTF_8);
+        if (!moduleFingerprint.equals(fingerprint)) {
+            throw new IllegalArgumentException("Bytecode was compiled by a different wasm module: " + fingerprint
+                    + " (expected " + moduleFingerprint + ")");
+        }
+        return buffer;
+    }
+}
@@ -2,6 +2,7 @@ package io.github.stefanrichterhuber.quickjswasmjava;
 
 import java.io.IOException;
 import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,6 +35,14 @@ import io.github.stefanrichterhuber.quickjswasmjava.QuickJSRuntime.ScriptDuratio
 public final class QuickJSContext implements AutoCloseable, Invocable {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * Status codes of native calls with a scalar result
+     */
+    static final long SCALAR_OK = 0;
+    static final long SCALAR_EXCEPTION = 1;
+    static final long SCALAR_TYPE_MISMATCH = 2;
+    static final long SCALAR_NULL = 3;
+
     /**
      * Pointer to the QuickJS context object in the Wasm memory.
      */
@@ -84,6 +93,48 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
      */
     private final ExportFunction poll;
 
+    /**
+     * The native compileScript function.
+     */
+    private final ExportFunction compileScript;
+
+    /**
+     * The native compileToBytecode function.
+     */
+    private final ExportFunction compileToBytecode;
+
+    /**
+     * The native evalBytecode function.
+     */
+    private final ExportFunction evalBytecode;
+
+    /**
+     * The native functions returning materialized results.
+     */
+    private final ExportFunction evalMaterialized;
+    private final ExportFunction evalBytecodeMaterialized;
+    private final ExportFunction getGlobalMaterialized;
+
+    /**
+     * The native JSON functions.
+     */
+    private final ExportFunction evalJson;
+    private final ExportFunction getGlobalJson;
+    private final ExportFunction setGlobalJson;
+
+    /**
+     * The native scalar eval functions.
+     */
+    private final ExportFunction evalInt;
+    private final ExportFunction evalDouble;
+    private final ExportFunction evalBoolean;
+    private final ExportFunction evalString;
+
+    /**
+     * The native takeLastException function.
+     */
+    private final ExportFunction takeLastException;
+
     /**
      * List of resources that are dependent on this context. If this context is
      * closed, all dependent resources will be closed too.
@@ -97,6 +148,11 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
 
     private final MessagePackRegistry messagePackRegistry;
 
+    /**
+     * If true, results of eval and getGlobal are materialized
+     */
+    private boolean materializeResults = false;
+
     /**
      * List of completable futures wrapping native promises.
      */
@@ -109,18 +165,74 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
      * @param runtime The runtime to create the context in.
      */
     QuickJSContext(final QuickJSRuntime runtime) {
+        this(runtime, 0);
+    }
+
+    /**
+     * Creates the Java representation of a QuickJS context. Not public, use
+     * {@link QuickJSRuntime#createContext()} instead.
+     * 
+     * @param runtime    The runtime to create the context in.
+     * @param contextPtr Pointer to an existing native context (e.g. restored from
+     *                   a {@link QuickJSSnapshot}), 0 to create a new native
+     *                   context.
+     */
+    QuickJSContext(final QuickJSRuntime runtime, final long contextPtr) {
         this.messagePackRegistry = new MessagePackRegistry(this);
         this.runtime = runtime;
-        this.createContext = runtime.getInstance().export("create_context_wasm");
-        this.closeContext = runtime.getInstance().export("close_context_wasm");
-        this.eval = runtime.getInstance().export("eval_script_wasm");
-        this.setGlobal = runtime.getInstance().export("set_global_wasm");
-        this.getGlobal = runtime.getInstance().export("get_global_wasm");
-        this.invoke = runtime.getInstance().export("invoke_wasm");
-        this.evalAsync = runtime.getInstance().export("eval_script_async_wasm");
-        this.poll = runtime.getInstance().export("poll_wasm");
-        this.contextPtr = createContext.apply(runtime.getRuntimePointer())[0];
+        this.createContext = runtime.export("create_context_wasm");
+        this.closeContext = runtime.export("close_context_wasm");
+        this.eval = runtime.export("eval_script_wasm");
+        this.setGlobal = runtime.export("set_global_wasm");
+        this.getGlobal = runtime.export("get_global_wasm");
+        this.invoke = runtime.export("invoke_wasm");
+        this.evalAsync = runtime.export("eval_script_async_wasm");
+        this.poll = runtime.export("poll_wasm");
+        this.compileScript = runtime.export("compile_script_wasm");
+        this.compileToBytecode = runtime.export("compile_to_bytecode_wasm");
+        this.evalBytecode = runtime.export("eval_bytecode_wasm");
+        this.evalMaterialized = runtime.export("eval_script_materialized_wasm");
+        this.evalBytecodeMaterialized = runtime.export("eval_bytecode_materialized_wasm");
+        this.getGlobalMaterialized = runtime.export("get_global_materialized_wasm");
+        this.evalJson = runtime.export("eval_script_json_wasm");
+        this.getGlobalJson = runtime.export("get_global_json_wasm");
+        this.setGlobalJson = runtime.export("set_global_json_wasm");
+        this.evalInt = runtime.export("eval_int_wasm");
+        this.evalDouble = runtime.export("eval_double_wasm");
+        this.evalBoolean = runtime.export("eval_boolean_wasm");
+        this.evalString = runtime.export("eval_string_wasm");
+        this.takeLastException = runtime.export("take_last_exception_wasm");
+        this.contextPtr = contextPtr != 0 ? contextPtr : createContext.apply(runtime.getRuntimePointer())[0];
+    }
+
+    /**
+     * Sets if the results of {@link #eval(String)}, {@link #evalBytecode(byte[])}
+     * and {@link #getGlobal(String)} are materialized: plain JS objects and arrays
+     * are copied (recursively) into a {@link Map} and a {@link List} with a single
+     * call into the native library, instead of returning a {@link QuickJSObject}
+     * or a {@link QuickJSArray} accessing the JS value on demand. Changes to the
+     * materialized values are not visible in JS. Functions, promises, typed arrays
+     * and array buffers are returned as usual. Cyclic values (and values nested
+     * deeper than 64 levels) can not be materialized and throw a
+     * {@link QuickJSException}.
+     * 
+     * @param materialize true to materialize results, false (default) to return
+     *                    handles to JS objects and arrays
+     * @return this QuickJSContext instance for method chaining.
+     */
+    public QuickJSContext withMaterializedResults(boolean materialize) {
+        this.materializeResults = materialize;
+        return this;
+    }
 
+    /**
+     * Creates a new, empty batch to apply many changes to native objects and
+     * arrays of this context with a single call.
+     * 
+     * @return new batch
+     */
+    public QuickJSBatch batch() {
+        return new QuickJSBatch(this);
     }
 
     /**
@@ -136,6 +248,17 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
         dependentResources.add(resource);
     }
 
+    /**
+     * Checks if this context holds references to Java objects: Java functions
+     * callable from JS, or JS objects, arrays, functions and promises handed to
+     * Java. These references can not be part of a {@link QuickJSSnapshot}.
+     * 
+     * @return true if this context holds references to Java objects
+     */
+    boolean hasJavaReferences() {
+        return !dependentResources.isEmpty() || !hostFunctions.isEmpty() || !completableFutures.isEmpty();
+    }
+
     /**
      * Calls a registred java host function from the QuickJS context.
      * 
@@ -166,10 +289,10 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
 
             // Now we have to write the result back to the memory (don't close the memory
             // location here!)
-            final MemoryLocation resultLocation = this.writeToMemory(result);
+            final MemoryLocation resultLocation = this.writeResultToMemory(result);
             return new long[] { resultLocation.pack() };
         } catch (RuntimeException e) {
-            MemoryLocation resultLocation = this.writeToMemory(e);
+            MemoryLocation resultLocation = this.writeResultToMemory(e);
             return new long[] { resultLocation.pack() };
         }
     }
@@ -275,19 +398,377 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
     }
 
     /**
-     * Evaluates a script in the QuickJS context.
+     * Evaluates a script in the QuickJS context. If the runtime has a
+     * {@link BytecodeCache} or a {@link BytecodeStore}, the compiled script is
+     * taken from there.
      * 
      * @param script The script to evaluate.
      * @return The result of the script.
      */
     public Object eval(String script) {
+        return eval(script, materializeResults);
+    }
+
+    /**
+     * Evaluates a script in the QuickJS context and materializes the result (see
+     * {@link #withMaterializedResults(boolean)}), independent of the setting of
+     * this context.
+     * 
+     * @param script The script to evaluate.
+     * @return The result of the script, plain JS objects and arrays as
+     *         {@link Map} and {@link List}.
+     */
+    public Object evalMaterialized(String script) {
+        return eval(script, true);
+    }
+
+    /**
+     * Evaluates a script in the QuickJS context
+     * 
+     * @param script      The script to evaluate.
+     * @param materialize true to materialize the result
+     * @return The result of the script.
+     */
+    private Object eval(String script, boolean materialize) {
+        final BytecodeCache cache = runtime.getBytecodeCache();
+        final BytecodeStore store = runtime.getBytecodeStore();
+        if (cache != null || store != null) {
+            return evalCached(script, cache, store, materialize);
+        }
+        final ExportFunction function = materialize ? evalMaterialized : eval;
         try (final MemoryLocation scriptLocation = this.writeStringToMemory(script);
                 ScriptDurationGuard guard = new ScriptDurationGuard(this.runtime)) {
-            long[] result = eval.apply(contextPtr, scriptLocation.pointer(), scriptLocation.length());
+            long[] result = function.apply(contextPtr, scriptLocation.pointer(), scriptLocation.length());
+            return handleNativeResult(result);
+        }
+    }
+
+    /**
+     * Compiles a script to QuickJS bytecode without running it. The returned
+     * script can be run any number of times in this context without parsing the
+     * source again.
+     * 
+     * @param script The source of the script to compile.
+     * @param name   The name of the script (used as file name in stack traces).
+     * @return The compiled script.
+     * @throws QuickJSException if the script contains syntax errors
+     */
+    public QuickJSScript compile(String script, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name of the script must not be null");
+        }
+        try (final MemoryLocation nameLocation = this.writeStringToMemory(name);
+                final MemoryLocation scriptLocation = this.writeStringToMemory(script)) {
+            long[] result = compileScript.apply(contextPtr, nameLocation.pointer(), nameLocation.length(),
+                    scriptLocation.pointer(), scriptLocation.length());
+            final Object resultobj = handleNativeResult(result);
+            if (!(resultobj instanceof QuickJSScript)) {
+                throw new IllegalStateException("Fatal error: compile must return a QuickJSScript");
+            }
+            return (QuickJSScript) resultobj;
+        }
+    }
+
+    /**
+     * Compiles a script to serialized QuickJS bytecode without running it. The
+     * bytecode can be stored and evaluated later with
+     * {@link #evalBytecode(byte[])} in any context of any runtime using the same
+     * version of the wasm library, skipping the parse step.
+     * 
+     * @param script The source of the script to compile.
+     * @return The serialized bytecode.
+     * @throws QuickJSException if the script contains syntax errors
+     */
+    public byte[] compileToBytecode(String script) {
+        return compileToBytecode(script, "eval_script");
+    }
+
+    /**
+     * Compiles a script to serialized QuickJS bytecode without running it. The
+     * bytecode can be stored and evaluated later with
+     * {@link #evalBytecode(byte[])} in any context of any runtime using the same
+     * version of the wasm library, skipping the parse step.
+     * 
+     * @param script The source of the script to compile.
+     * @param name   The name of the script (used as file name in stack traces).
+     * @return The serialized bytecode.
+     * @throws QuickJSException if the script contains syntax errors
+     */
+    public byte[] compileToBytecode(String script, String name) {
+        return QuickJSBytecode.wrap(runtime.getFactory().getModuleFingerprint(), compileToRawBytecode(script, name));
+    }
+
+    /**
+     * Evaluates bytecode compiled by {@link #compileToBytecode(String)} in the
+     * QuickJS context.
+     * 
+     * @param bytecode The serialized bytecode.
+     * @return The result of the script.
+     * @throws IllegalArgumentException if the data is no bytecode or was compiled
+     *                                  by a different version of the wasm library
+     */
+    public Object evalBytecode(byte[] bytecode) {
+        return evalRawBytecode(QuickJSBytecode.unwrap(runtime.getFactory().getModuleFingerprint(), bytecode),
+                materializeResults);
+    }
+
+    /**
+     * Evaluates a script precompiled at build time by {@link BytecodeCompiler}.
+     * The bytecode is loaded from the classpath resource
+     * {@code META-INF/quickjs/<name>.qjsbc} using the context class loader of the
+     * current thread.
+     * 
+     * @param name The name of the script: its path relative to the source
+     *             directory, e.g. {@code rules/score.js}.
+     * @return The result of the script.
+     * @throws IllegalArgumentException if no precompiled script with the given
+     *                                  name is found or it was compiled by a
+     *                                  different version of the wasm library
+     */
+    public Object evalPrecompiled(String name) {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return evalPrecompiled(name, classLoader != null ? classLoader : QuickJSContext.class.getClassLoader());
+    }
+
+    /**
+     * Evaluates a script precompiled at build time by {@link BytecodeCompiler}.
+     * The bytecode is loaded from the classpath resource
+     * {@code META-INF/quickjs/<name>.qjsbc}.
+     * 
+     * @param name        The name of the script: its path relative to the source
+     *                    directory, e.g. {@code rules/score.js}.
+     * @param classLoader The class loader to load the resource from.
+     * @return The result of the script.
+     * @throws IllegalArgumentException if no precompiled script with the given
+     *                                  name is found or it was compiled by a
+     *                                  different version of the wasm library
+     */
+    public Object evalPrecompiled(String name, ClassLoader classLoader) {
+        return evalBytecode(BytecodeCompiler.load(classLoader, name));
+    }
+
+    /**
+     * Evaluates a script using the bytecode cache and / or store. Only scripts
+     * found in neither of them are compiled.
+     * 
+     * @param script      The script to evaluate.
+     * @param cache       The cache to use (might be null).
+     * @param store       The store to use (might be null).
+     * @param materialize true to materialize the result
+     * @return The result of the script.
+     */
+    private Object evalCached(String script, BytecodeCache cache, BytecodeStore store, boolean materialize) {
+        final String key = BytecodeCache.key(script);
+        if (cache != null) {
+            final byte[] bytecode = cache.get(key);
+            if (bytecode != null) {
+                return evalRawBytecode(bytecode, materialize);
+            }
+        }
+        if (store != null) {
+            final ByteBuffer stored = loadFromStore(store, key);
+            if (stored != null) {
+                if (cache == null) {
+                    return evalRawBytecode(stored, materialize);
+                }
+                final byte[] bytecode = new byte[stored.remaining()];
+                stored.get(bytecode);
+                cache.put(key, bytecode);
+                return evalRawBytecode(bytecode, materialize);
+            }
+        }
+
+        // Same name as used by eval, so stack traces don't depend on the cache
+        final byte[] bytecode = compileToRawBytecode(script, "eval_script");
+        if (cache != null) {
+            cache.put(key, bytecode);
+        }
+        if (store != null) {
+            try {
+                store.store(key, QuickJSBytecode.wrap(runtime.getFactory().getModuleFingerprint(), bytecode));
+            } catch (IOException e) {
+                LOGGER.warn("Failed to store bytecode {}", key, e);
+            }
+        }
+        return evalRawBytecode(bytecode, materialize);
+    }
+
+    /**
+     * Loads raw bytecode from the bytecode store. Bytecode which can't be read or
+     * was compiled by a different wasm module is ignored.
+     * 
+     * @param store The store to use.
+     * @param key   The key of the bytecode.
+     * @return The raw bytecode or null if not found.
+     */
+    private ByteBuffer loadFromStore(BytecodeStore store, String key) {
+        try {
+            final ByteBuffer stored = store.load(key);
+            return stored != null ? QuickJSBytecode.unwrap(runtime.getFactory().getModuleFingerprint(), stored)
+                    : null;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to load bytecode {}", key, e);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Ignoring stored bytecode {}: {}", key, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Compiles a script to raw QuickJS bytecode (without header)
+     * 
+     * @param script The source of the script to compile.
+     * @param name   The name of the script.
+     * @return The raw bytecode.
+     */
+    private byte[] compileToRawBytecode(String script, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name of the script must not be null");
+        }
+        try (final MemoryLocation nameLocation = this.writeStringToMemory(name);
+                final MemoryLocation scriptLocation = this.writeStringToMemory(script)) {
+            long[] result = compileToBytecode.apply(contextPtr, nameLocation.pointer(), nameLocation.length(),
+                    scriptLocation.pointer(), scriptLocation.length());
+            final Object resultobj = handleNativeResult(result);
+            if (!(resultobj instanceof byte[])) {
+                throw new IllegalStateException("Fatal error: compileToBytecode must return a byte[]");
+            }
+            return (byte[]) resultobj;
+        }
+    }
+
+    /**
+     * Evaluates raw QuickJS bytecode (without header)
+     * 
+     * @param bytecode    The raw bytecode.
+     * @param materialize true to materialize the result
+     * @return The result of the script.
+     */
+    private Object evalRawBytecode(byte[] bytecode, boolean materialize) {
+        return evalBytecodeInMemory(this.getRuntime().writeToMemory(bytecode), materialize);
+    }
+
+    /**
+     * Evaluates raw QuickJS bytecode (without header)
+     * 
+     * @param bytecode    The raw bytecode (e.g. memory mapped).
+     * @param materialize true to materialize the result
+     * @return The result of the script.
+     */
+    private Object evalRawBytecode(ByteBuffer bytecode, boolean materialize) {
+        return evalBytecodeInMemory(this.getRuntime().writeToMemory(bytecode), materialize);
+    }
+
+    /**
+     * Evaluates raw QuickJS bytecode already written to the wasm memory. The
+     * memory is freed afterwards.
+     * 
+     * @param bytecodeLocation The memory location of the raw bytecode.
+     * @param materialize      true to materialize the result
+     * @return The result of the script.
+     */
+    private Object evalBytecodeInMemory(MemoryLocation bytecodeLocation, boolean materialize) {
+        final ExportFunction function = materialize ? evalBytecodeMaterialized : evalBytecode;
+        try (bytecodeLocation; ScriptDurationGuard guard = new ScriptDurationGuard(this.runtime)) {
+            long[] result = function.apply(contextPtr, bytecodeLocation.pointer(), bytecodeLocation.length());
             return handleNativeResult(result);
         }
     }
 
+    /**
+     * Evaluates a script returning an int. The result is passed as primitive
+     * value, without encoding and boxing it.
+     * 
+     * @param script The script to evaluate.
+     * @return The result of the script.
+     * @throws ClassCastException if the result is not an integral number within
+     *                            the range of an int
+     * @throws QuickJSException   if the script throws an exception
+     */
+    public int evalInt(String script) {
+        return (int) scalarResult(evalScalar(evalInt, script), "an int");
+    }
+
+    /**
+     * Evaluates a script returning a number. The result is passed as primitive
+     * value, without encoding and boxing it.
+     * 
+     * @param script The script to evaluate.
+     * @return The result of the script.
+     * @throws ClassCastException if the result is not a number
+     * @throws QuickJSException   if the script throws an exception
+     */
+    public double evalDouble(String script) {
+        return Double.longBitsToDouble(scalarResult(evalScalar(evalDouble, script), "a number"));
+    }
+
+    /**
+     * Evaluates a script returning a boolean. The result is passed as primitive
+     * value, without encoding and boxing it.
+     * 
+     * @param script The script to evaluate.
+     * @return The result of the script.
+     * @throws ClassCastException if the result is not a boolean
+     * @throws QuickJSException   if the script throws an exception
+     */
+    public boolean evalBoolean(String script) {
+        return scalarResult(evalScalar(evalBoolean, script), "a boolean") != 0;
+    }
+
+    /**
+     * Evaluates a script returning a string. The result is passed as raw string,
+     * without encoding it.
+     * 
+     * @param script The script to evaluate.
+     * @return The result of the script (null if the result is null or undefined).
+     * @throws ClassCastException if the result is not a string
+     * @throws QuickJSException   if the script throws an exception
+     */
+    public String evalString(String script) {
+        final long status = evalScalar(evalString, script);
+        if (status == SCALAR_NULL) {
+            return null;
+        }
+        try (MemoryLocation resultLocation = MemoryLocation.unpack(scalarResult(status, "a string"), runtime)) {
+            return runtime.getInstance().memory().readString((int) resultLocation.pointer(),
+                    resultLocation.length());
+        }
+    }
+
+    /**
+     * Evaluates a script with one of the native scalar eval functions
+     * 
+     * @param function The native function.
+     * @param script   The script to evaluate.
+     * @return The status of the call.
+     */
+    private long evalScalar(ExportFunction function, String script) {
+        try (final MemoryLocation scriptLocation = this.writeStringToMemory(script);
+                ScriptDurationGuard guard = new ScriptDurationGuard(this.runtime)) {
+            return function.apply(contextPtr, scriptLocation.pointer(), scriptLocation.length())[0];
+        }
+    }
+
+    /**
+     * Centralized result handling of native calls with a scalar result. The
+     * result itself is read from the result slot in the wasm memory, exceptions
+     * are fetched separately.
+     * 
+     * @param status The status returned by the native call.
+     * @param type   Description of the expected type, for error messages.
+     * @return The raw 64 bit result.
+     */
+    long scalarResult(long status, String type) {
+        if (status == SCALAR_OK) {
+            return runtime.readScalarResult();
+        }
+        if (status == SCALAR_EXCEPTION) {
+            final Object exception = handleNativeResult(takeLastException.apply());
+            throw new QuickJSException("Unknown error in scalar call: " + exception, null);
+        }
+        throw new ClassCastException("Result is not " + type);
+    }
+
     /**
      * Evaluates a script in the QuickJS context with async support
      * 
@@ -319,6 +800,82 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
         return result[0] == 1;
     }
 
+    /**
+     * Evaluates a script and returns the result serialized by the native
+     * JSON.stringify, without converting it to java objects first.
+     * 
+     * @param script The script to evaluate.
+     * @return The result as UTF-8 encoded JSON, null if the result has no JSON
+     *         representation (e.g. undefined).
+     */
+    public byte[] evalJson(String script) {
+        try (final MemoryLocation scriptLocation = this.writeStringToMemory(script);
+                ScriptDurationGuard guard = new ScriptDurationGuard(this.runtime)) {
+            long[] result = evalJson.apply(contextPtr, scriptLocation.pointer(), scriptLocation.length());
+            return (byte[]) handleNativeResult(result);
+        }
+    }
+
+    /**
+     * Gets a global variable serialized by the native JSON.stringify, without
+     * converting it to java objects first.
+     * 
+     * @param name The name of the global variable.
+     * @return The global variable as UTF-8 encoded JSON, null if it has no JSON
+     *         representation (e.g. undefined).
+     */
+    public byte[] getGlobalJson(String name) {
+        try (final MemoryLocation nameLocation = writeStringToMemory(name)) {
+            final long[] result = getGlobalJson.apply(contextPtr, nameLocation.pointer(), nameLocation.length());
+            return (byte[]) handleNativeResult(result);
+        }
+    }
+
+    /**
+     * Sets a global variable parsed from JSON by the native JSON.parse. The JSON
+     * is copied as is into the wasm memory, without converting it to java objects
+     * first.
+     * 
+     * @param name The name of the global variable.
+     * @param json UTF-8 encoded JSON.
+     * @throws QuickJSException if the JSON is invalid
+     */
+    public void setGlobalJson(String name, byte[] json) {
+        try (final MemoryLocation jsonLocation = runtime.writeToScratch(json)) {
+            setGlobalJson(name, jsonLocation);
+        }
+    }
+
+    /**
+     * Sets a global variable parsed from JSON by the native JSON.parse. The JSON
+     * is copied as is into the wasm memory, without converting it to java objects
+     * first.
+     * 
+     * @param name The name of the global variable.
+     * @param json UTF-8 encoded JSON (e.g. a HTTP request body). The position of
+     *             the buffer is not changed.
+     * @throws QuickJSException if the JSON is invalid
+     */
+    public void setGlobalJson(String name, ByteBuffer json) {
+        try (final MemoryLocation jsonLocation = runtime.writeToMemory(json)) {
+            setGlobalJson(name, jsonLocation);
+        }
+    }
+
+    /**
+     * Sets a global variable parsed from JSON already written to the wasm memory
+     * 
+     * @param name         The name of the global variable.
+     * @param jsonLocation The memory location of the UTF-8 encoded JSON.
+     */
+    private void setGlobalJson(String name, MemoryLocation jsonLocation) {
+        try (final MemoryLocation nameLocation = writeStringToMemory(name)) {
+            final long[] result = setGlobalJson.apply(contextPtr, nameLocation.pointer(), nameLocation.length(),
+                    jsonLocation.pointer(), jsonLocation.length());
+            handleNativeResult(result);
+        }
+    }
+
     /**
      * Sets a global variable in the QuickJS context.
      * 
@@ -357,10 +914,35 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
      * @return The global variable.
      */
     public Object getGlobal(String name) {
+        return getGlobal(name, materializeResults);
+    }
+
+    /**
+     * Gets a global variable from the QuickJS context and materializes it (see
+     * {@link #withMaterializedResults(boolean)}), independent of the setting of
+     * this context.
+     * 
+     * @param name The name of the global variable.
+     * @return The global variable, plain JS objects and arrays as {@link Map} and
+     *         {@link List}.
+     */
+    public Object getGlobalMaterialized(String name) {
+        return getGlobal(name, true);
+    }
+
+    /**
+     * Gets a global variable from the QuickJS context.
+     * 
+     * @param name        The name of the global variable.
+     * @param materialize true to materialize the global variable
+     * @return The global variable.
+     */
+    private Object getGlobal(String name, boolean materialize) {
         LOGGER.debug("Getting global: {}", name);
 
+        final ExportFunction function = materialize ? getGlobalMaterialized : getGlobal;
         try (final MemoryLocation nameLocation = writeStringToMemory(name)) {
-            final long[] result = getGlobal.apply(contextPtr, nameLocation.pointer(), nameLocation.length());
+            final long[] result = function.apply(contextPtr, nameLocation.pointer(), nameLocation.length());
             return handleNativeResult(result);
         }
     }
@@ -574,15 +1156,27 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
     }
 
     /**
-     * Writes an object to the memory of the QuickJS runtime.
+     * Writes an object to the memory of the QuickJS runtime. Small objects are
+     * written to the scratch arena of the runtime, so the memory location must be
+     * freed by the caller and must not be handed over to the wasm library.
      * 
      * @param data The object to write to the memory.
      * @return The memory location of the object.
      * @throws IOException If the object cannot be written to the memory.
      */
     MemoryLocation writeToMemory(Object data) {
-        final byte[] valueBytes = this.messagePackRegistry.pack(data);
-        return this.getRuntime().writeToMemory(valueBytes);
+        return this.messagePackRegistry.pack(data, this.getRuntime(), true);
+    }
+
+    /**
+     * Writes an object to the memory of the QuickJS runtime, to be handed over to
+     * (and freed by) the wasm library.
+     * 
+     * @param data The object to write to the memory.
+     * @return The memory location of the object.
+     */
+    MemoryLocation writeResultToMemory(Object data) {
+        return this.messagePackRegistry.pack(data, this.getRuntime(), false);
     }
 
     /**
@@ -597,7 +1191,7 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
             throw new IllegalArgumentException("string value to write to the memory must not be null");
         }
         final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
-        return this.getRuntime().writeToMemory(valueBytes);
+        return this.getRuntime().writeToScratch(valueBytes);
     }
 
     /**
@@ -622,16 +1216,16 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
     }
 
     /**
-     * Unpacks an object from a memory location.
+     * Unpacks an object from a memory location. The object is read directly
+     * from the wasm memory while it is unpacked, so the memory location must only
+     * be freed after this method returned.
      * 
      * @param memoryLocation The memory location to unpack the object from.
      * @return The unpacked object.
      * @throws IOException If the object cannot be unpacked.
      */
     Object unpackObjectFromMemory(MemoryLocation memoryLocation) {
-        final byte[] bytes = memoryLocation.runtime().getInstance().memory().readBytes((int) memoryLocation.pointer(),
-                (int) memoryLocation.length());
-        return this.messagePackRegistry.unpack(bytes);
+        return this.messagePackRegistry.unpack(memoryLocation);
     }
 
     /**
@@ -655,6 +1249,7 @@ public final class QuickJSContext implements AutoCloseable, Invocable {
             // Closing the context might fail after a runtime limit was reached
             LOGGER.warn("Error closing QuickJS context", e);
         }
+        runtime.removeContext(contextPtr);
         contextPtr = 0;
         LOGGER.debug("Successfully closed QuickJSContext");
 
@@ -7,6 +7,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Memory;
 
 import io.github.stefanrichterhuber.quickjswasmjava.QuickJSRuntime.ScriptDurationGuard;
 
@@ -16,6 +17,13 @@ import io.github.stefanrichterhuber.quickjswasmjava.QuickJSRuntime.ScriptDuratio
 public final class QuickJSFunction implements Function<List<Object>, Object> {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    /**
+     * Maximum number of arguments passed through the argument area of typed calls
+     * (see {@link #callDouble(double...)}), same as in the wasm library. Calls
+     * with more arguments fall back to {@link #call(Object...)}.
+     */
+    static final int MAX_TYPED_ARGS = 16;
+
     /**
      * The context this function belongs to.
      */
@@ -33,6 +41,12 @@ public final class QuickJSFunction implements Function<List<Object>, Object> {
      */
     private final ExportFunction call;
 
+    /**
+     * The native typed call functions.
+     */
+    private final ExportFunction callDouble;
+    private final ExportFunction callInt;
+
     private final ExportFunction close;
 
     /**
@@ -46,8 +60,10 @@ public final class QuickJSFunction implements Function<List<Object>, Object> {
         this.context = context;
         this.name = name;
         this.functionPtr = functionPtr;
-        this.call = context.getRuntime().getInstance().export("call_function_wasm");
-        this.close = context.getRuntime().getInstance().export("close_function_wasm");
+        this.call = context.getRuntime().export("call_function_wasm");
+        this.callDouble = context.getRuntime().export("call_function_double_wasm");
+        this.callInt = context.getRuntime().export("call_function_int_wasm");
+        this.close = context.getRuntime().export("close_function_wasm");
         context.addDependentResource(this::close);
     }
 
@@ -73,6 +89,79 @@ public final class QuickJSFunction implements Function<List<Object>, Object> {
         }
     }
 
+    /**
+     * Calls the function with numbers and returns a number. Arguments and result
+     * are passed as primitive values through a preallocated area in the wasm
+     * memory, without encoding and boxing them.
+     * 
+     * @param args the arguments to pass to the function
+     * @return the result of the function call
+     * @throws ClassCastException if the result is not a number
+     * @throws QuickJSException   if the function throws an exception
+     */
+    public double callDouble(double... args) {
+        if (args.length > MAX_TYPED_ARGS) {
+            return ((Number) call((Object[]) box(args))).doubleValue();
+        }
+        final QuickJSRuntime runtime = this.context.getRuntime();
+        final Memory memory = runtime.getInstance().memory();
+        final int argsPtr = (int) runtime.getScalarArgsPointer();
+        for (int i = 0; i < args.length; i++) {
+            memory.writeF64(argsPtr + i * Long.BYTES, args[i]);
+        }
+        try (final ScriptDurationGuard guard = new ScriptDurationGuard(runtime)) {
+            final long status = callDouble.apply(getContextPointer(), getFunctionPointer(), args.length)[0];
+            return Double.longBitsToDouble(this.context.scalarResult(status, "a number"));
+        }
+    }
+
+    /**
+     * Calls the function with ints and returns an int. Arguments and result are
+     * passed as primitive values through a preallocated area in the wasm memory,
+     * without encoding and boxing them.
+     * 
+     * @param args the arguments to pass to the function
+     * @return the result of the function call
+     * @throws ClassCastException if the result is not an integral number within
+     *                            the range of an int
+     * @throws QuickJSException   if the function throws an exception
+     */
+    public int callInt(int... args) {
+        if (args.length > MAX_TYPED_ARGS) {
+            final Object result = call((Object[]) box(args));
+            if (result instanceof Integer i) {
+                return i;
+            }
+            throw new ClassCastException("Result is not an int");
+        }
+        final QuickJSRuntime runtime = this.context.getRuntime();
+        final Memory memory = runtime.getInstance().memory();
+        final int argsPtr = (int) runtime.getScalarArgsPointer();
+        for (int i = 0; i < args.length; i++) {
+            memory.writeLong(argsPtr + i * Long.BYTES, args[i]);
+        }
+        try (final ScriptDurationGuard guard = new ScriptDurationGuard(runtime)) {
+            final long status = callInt.apply(getContextPointer(), getFunctionPointer(), args.length)[0];
+            return (int) this.context.scalarResult(status, "an int");
+        }
+    }
+
+    private static Double[] box(double[] values) {
+        final Double[] result = new Double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    private static Integer[] box(int[] values) {
+        final Integer[] result = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
     /**
      * Closes the function
      * 
@@ -2,9 +2,14 @@ package io.github.stefanrichterhuber.quickjswasmjava;
 
 import java.lang.reflect.Proxy;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -40,6 +45,13 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
     private final ExportFunction removeValue;
     private final ExportFunction setValue;
     private final ExportFunction keySet;
+    private final ExportFunction entries;
+    private final ExportFunction entriesKeys;
+    private final ExportFunction entriesPage;
+    private final ExportFunction keysSize;
+    private final ExportFunction keysClose;
+    private final ExportFunction swapValue;
+    private final ExportFunction takeValue;
     private final ExportFunction close;
 
     /**
@@ -52,13 +64,20 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
         this.ctx = ctx;
         this.objectPointer = objectPointer;
         this.ctx.addDependentResource(this::close);
-        this.containsKey = ctx.getRuntime().getInstance().export("object_contains_key_wasm");
-        this.getValue = ctx.getRuntime().getInstance().export("object_get_value_wasm");
-        this.setValue = ctx.getRuntime().getInstance().export("object_set_value_wasm");
-        this.removeValue = ctx.getRuntime().getInstance().export("object_remove_value_wasm");
-        this.size = ctx.getRuntime().getInstance().export("object_size_wasm");
-        this.keySet = ctx.getRuntime().getInstance().export("object_key_set_wasm");
-        this.close = ctx.getRuntime().getInstance().export("object_close_wasm");
+        this.containsKey = ctx.getRuntime().export("object_contains_key_wasm");
+        this.getValue = ctx.getRuntime().export("object_get_value_wasm");
+        this.setValue = ctx.getRuntime().export("object_set_value_wasm");
+        this.removeValue = ctx.getRuntime().export("object_remove_value_wasm");
+        this.size = ctx.getRuntime().export("object_size_wasm");
+        this.keySet = ctx.getRuntime().export("object_key_set_wasm");
+        this.entries = ctx.getRuntime().export("object_entries_wasm");
+        this.entriesKeys = ctx.getRuntime().export("object_entries_keys_wasm");
+        this.entriesPage = ctx.getRuntime().export("object_entries_page_wasm");
+        this.keysSize = ctx.getRuntime().export("array_size_wasm");
+        this.keysClose = ctx.getRuntime().export("array_close_wasm");
+        this.swapValue = ctx.getRuntime().export("object_swap_value_wasm");
+        this.takeValue = ctx.getRuntime().export("object_take_value_wasm");
+        this.close = ctx.getRuntime().export("object_close_wasm");
     }
 
     /**
@@ -98,7 +117,7 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
      * 
      * @param key Key object to check
      */
-    private static void assertValidKeyType(Object key) {
+    static void assertValidKeyType(Object key) {
         if (key instanceof String || key instanceof Number || key instanceof Boolean) {
             return;
         }
@@ -112,7 +131,7 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
      * @return Pointer to the native object
      */
     private static long createNativeObject(QuickJSContext ctx) {
-        final ExportFunction create = ctx.getRuntime().getInstance().export("object_create_wasm");
+        final ExportFunction create = ctx.getRuntime().export("object_create_wasm");
         final long[] result = create.apply(ctx.getContextPointer());
         if (result[0] == 0l) {
             throw new IllegalStateException("Failed to create native object");
@@ -151,6 +170,10 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
         }
     }
 
+    /**
+     * Fetches all values with a single call (see {@link #values()}), including
+     * the handle cost described there.
+     */
     @Override
     public boolean containsValue(Object value) {
         return values().contains(value);
@@ -158,13 +181,146 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
 
     /**
      * Unlike the standard Map.entrySet(), this method returns a snapshot of the
-     * entry set at the time of the call. Changes to the underlying QuickJS object
-     * after the call will only reflected on the values of the entry set, not on
-     * the keys.
+     * entry set at the time of the call. All keys and values are fetched with a
+     * single call. Changes to the underlying QuickJS object after the call are
+     * not reflected in the entry set. Setting the value of an entry writes it to
+     * the QuickJS object.
+     * <p>
+     * Values which are JS objects, arrays or functions are returned as handles
+     * (e.g. {@link QuickJSObject}). A handle is created for every such value,
+     * even if it is never used, and each handle keeps its JS value alive until
+     * the context is closed. Prefer {@link #get(Object)} for single values of
+     * objects with many nested objects.
      */
     @Override
     public Set<Entry<K, V>> entrySet() {
-        return keySet().stream().map(k -> new QuickJSObjectEntry<>(this, k)).collect(Collectors.toSet());
+        return new LinkedHashSet<>(fetchEntries());
+    }
+
+    /**
+     * Returns an iterator over the entries of the object, which fetches the
+     * entries in pages of the given size. Useful for huge objects, whose entries
+     * should not be copied at once. Like {@link #entrySet()} the entries are
+     * snapshots, with handles for nested objects created per page.
+     * <p>
+     * The keys of the object are captured once when the iterator is created, in
+     * a native array, so every page costs only its own size. Keys added during
+     * the iteration are not returned, keys removed are skipped. The captured keys
+     * are released as soon as the iteration is complete, or with the context if
+     * the iteration is abandoned.
+     * 
+     * @param pageSize Number of entries fetched with a single call
+     * @return iterator over the entries
+     */
+    public Iterator<Entry<K, V>> entryIterator(final int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        final EntryPager pager = new EntryPager(pageSize);
+        this.ctx.addDependentResource(pager);
+        return pager;
+    }
+
+    /**
+     * Iterator over the entries of this object, paging through the keys captured
+     * by the native library
+     */
+    private final class EntryPager implements Iterator<Entry<K, V>>, AutoCloseable {
+        private final int pageSize;
+        /**
+         * Pointer to the native array of the captured keys, 0 once released
+         */
+        private long keysPointer;
+        private final int keyCount;
+        private List<Entry<K, V>> page = List.of();
+        private int offset = 0;
+        private int index = 0;
+
+        EntryPager(int pageSize) {
+            this.pageSize = pageSize;
+            final long[] result = entriesKeys.apply(getContextPointer(), getObjectPointer());
+            if (result[0] == 0l) {
+                throw new IllegalStateException("Failed to capture the keys of the object");
+            }
+            this.keysPointer = result[0];
+            this.keyCount = (int) keysSize.apply(getContextPointer(), keysPointer)[0];
+        }
+
+        @Override
+        public boolean hasNext() {
+            // Pages might be empty if all of their keys were removed
+            while (index >= page.size()) {
+                if (offset >= keyCount) {
+                    close();
+                    return false;
+                }
+                final long[] result = entriesPage.apply(getContextPointer(), getObjectPointer(), keysPointer, offset,
+                        pageSize);
+                page = unpackEntries(result[0]);
+                offset += pageSize;
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(index++);
+        }
+
+        @Override
+        public void close() {
+            if (keysPointer == 0) {
+                return;
+            }
+            try {
+                keysClose.apply(getContextPointer(), keysPointer);
+            } catch (Exception e) {
+                // May fail
+                LOGGER.debug("Failed to close captured keys", e);
+            }
+            keysPointer = 0;
+        }
+    }
+
+    /**
+     * Fetches all entries of the object with a single call
+     * 
+     * @return entries of the object
+     */
+    private List<Entry<K, V>> fetchEntries() {
+        final long[] result = this.entries.apply(this.getContextPointer(), this.getObjectPointer());
+        return unpackEntries(result[0]);
+    }
+
+    /**
+     * Unpacks entries returned by the native library as flat list of alternating
+     * keys and values
+     * 
+     * @param packedLocation Packed memory location of the entries
+     * @return entries of the object
+     */
+    @SuppressWarnings("unchecked")
+    private List<Entry<K, V>> unpackEntries(long packedLocation) {
+        try (final MemoryLocation resultLocation = MemoryLocation.unpack(packedLocation, this.ctx.getRuntime())) {
+            final Object r = this.ctx.unpackObjectFromMemory(resultLocation);
+            if (r instanceof RuntimeException) {
+                throw (RuntimeException) r;
+            } else if (r instanceof List) {
+                // Alternating keys and values
+                final List<Object> keysAndValues = (List<Object>) r;
+                final List<Entry<K, V>> entries = new ArrayList<>(keysAndValues.size() / 2);
+                for (int i = 0; i + 1 < keysAndValues.size(); i += 2) {
+                    entries.add(new QuickJSObjectEntry<>(this, (K) keysAndValues.get(i), (V) keysAndValues.get(i + 1)));
+                }
+                return entries;
+            } else {
+                throw new RuntimeException("Result is not a list");
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -216,13 +372,27 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
         }
     }
 
+    /**
+     * Sets the value and returns the previous value with a single call. If the
+     * previous value is not required, use {@link #set(Object, Object)} instead.
+     */
     @Override
     public V put(K key, V value) {
+        return swap(key, value, true);
+    }
+
+    /**
+     * Sets the value of the key without fetching the previous value (unlike
+     * {@link #put(Object, Object)}).
+     * 
+     * @param key   Key to set. Must be a String, Number or Boolean.
+     * @param value Value to set
+     */
+    public void set(K key, V value) {
         if (key == null) {
             throw new NullPointerException("Key must not be null");
         }
         assertValidKeyType(key);
-        final V oldValue = get(key);
 
         try (final MemoryLocation keyLocation = this.ctx.writeToMemory(key);
                 final MemoryLocation valueLocation = this.ctx.writeToMemory(value)) {
@@ -231,19 +401,92 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
                     keyLocation.length(), valueLocation.pointer(), valueLocation.length());
 
         }
-        return oldValue;
     }
 
+    /**
+     * Sets the value of the key and optionally returns the previous value, with a
+     * single call.
+     * 
+     * @param key            Key to set. Must be a String, Number or Boolean.
+     * @param value          Value to set
+     * @param returnPrevious true to fetch the previous value
+     * @return the previous value if requested (null if the key did not exist),
+     *         otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    public V swap(K key, V value, boolean returnPrevious) {
+        if (key == null) {
+            throw new NullPointerException("Key must not be null");
+        }
+        assertValidKeyType(key);
+
+        try (final MemoryLocation keyLocation = this.ctx.writeToMemory(key);
+                final MemoryLocation valueLocation = this.ctx.writeToMemory(value)) {
+
+            final long[] result = this.swapValue.apply(this.getContextPointer(), this.getObjectPointer(),
+                    keyLocation.pointer(), keyLocation.length(), valueLocation.pointer(), valueLocation.length(),
+                    returnPrevious ? 1 : 0);
+
+            try (final MemoryLocation resultLocation = MemoryLocation.unpack(result[0], this.ctx.getRuntime())) {
+                final Object r = this.ctx.unpackObjectFromMemory(resultLocation);
+                if (r instanceof RuntimeException) {
+                    throw (RuntimeException) r;
+                } else {
+                    return (V) r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets all values with a single call (see {@link QuickJSBatch}).
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        final QuickJSBatch batch = this.ctx.batch();
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            batch.put(this, entry.getKey(), entry.getValue());
+        }
+        batch.apply();
+    }
+
+    /**
+     * Removes the key and returns the previous value with a single call. If the
+     * previous value is not required, use {@link #delete(Object)} instead.
+     */
+    @SuppressWarnings("unchecked")
     @Override
     public V remove(Object key) {
         assertValidKeyType(key);
-        final V value = get(key);
+
+        try (final MemoryLocation keyLocation = this.ctx.writeToMemory(key)) {
+            final long[] result = this.takeValue.apply(this.getContextPointer(), this.getObjectPointer(),
+                    keyLocation.pointer(), keyLocation.length());
+
+            try (final MemoryLocation resultLocation = MemoryLocation.unpack(result[0], this.ctx.getRuntime())) {
+                final Object r = this.ctx.unpackObjectFromMemory(resultLocation);
+                if (r instanceof RuntimeException) {
+                    throw (RuntimeException) r;
+                } else {
+                    return (V) r;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the key without fetching the previous value (unlike
+     * {@link #remove(Object)}).
+     * 
+     * @param key Key to remove. Must be a String, Number or Boolean.
+     */
+    public void delete(K key) {
+        assertValidKeyType(key);
 
         try (final MemoryLocation keyLocation = this.ctx.writeToMemory(key)) {
             this.removeValue.apply(this.getContextPointer(), this.getObjectPointer(), keyLocation.pointer(),
                     keyLocation.length());
         }
-        return value;
     }
 
     @Override
@@ -254,13 +497,16 @@ public final class QuickJSObject<K, V> extends AbstractMap<K, V> {
 
     /**
      * Returns the values of the object. Unlike the standard Map.values() this is a
-     * copy of the values at the time of the call and not a view on the object.
+     * copy of the values at the time of the call and not a view on the object. All
+     * values are fetched with a single call. Like {@link #entrySet()} a handle is
+     * created for every value which is a JS object, array or function, kept until
+     * the context is closed.
      * 
      * @return collection of values
      */
     @Override
     public Collection<V> values() {
-        return entrySet().stream().map(Entry::getValue).collect(Collectors.toList());
+        return fetchEntries().stream().map(Entry::getValue).collect(Collectors.toList());
     }
 
     @SuppressWarnings("unchecked")
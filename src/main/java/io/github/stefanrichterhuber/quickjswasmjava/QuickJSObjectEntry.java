@@ -4,9 +4,9 @@ import java.util.Map.Entry;
 import java.util.Objects;
 
 /**
- * Entry implementation for QuickJSObject. Keys are copied from the JS object
- * when the entry is created. Values are copied from the JS object when the
- * entry is accessed.
+ * Entry implementation for QuickJSObject. Keys and values are copied from the
+ * JS object when the entry is created. Setting the value writes it to the JS
+ * object.
  * 
  * @param <K> the type of keys maintained by this map. Must be a String, Number
  *            or Boolean.
@@ -16,16 +16,19 @@ import java.util.Objects;
 final class QuickJSObjectEntry<K, V> implements Entry<K, V> {
     private final QuickJSObject<K, V> parent;
     private final K key;
+    private V value;
 
     /**
-     * Creates a QuickJSObjectEntry for the given QuickJSObject and key.
+     * Creates a QuickJSObjectEntry for the given QuickJSObject, key and value.
      * 
      * @param parent parent QuickJSObject
      * @param key    key of the entry
+     * @param value  value of the entry
      */
-    QuickJSObjectEntry(QuickJSObject<K, V> parent, K key) {
+    QuickJSObjectEntry(QuickJSObject<K, V> parent, K key, V value) {
         this.parent = parent;
         this.key = key;
+        this.value = value;
     }
 
     @Override
@@ -35,11 +38,12 @@ final class QuickJSObjectEntry<K, V> implements Entry<K, V> {
 
     @Override
     public V getValue() {
-        return parent.get(key);
+        return value;
     }
 
     @Override
     public V setValue(V value) {
+        this.value = value;
         return parent.put(key, value);
     }
 
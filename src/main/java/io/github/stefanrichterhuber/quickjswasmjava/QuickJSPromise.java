@@ -34,9 +34,9 @@ final class QuickJSPromise extends CompletableFuture<Object> {
      */
     QuickJSPromise(QuickJSContext context, long promisePtr) {
         this.context = context;
-        this.resolve = context.getRuntime().getInstance().export("promise_resolve_wasm");
-        this.reject = context.getRuntime().getInstance().export("promise_reject_wasm");
-        this.close = context.getRuntime().getInstance().export("promise_close_wasm");
+        this.resolve = context.getRuntime().export("promise_resolve_wasm");
+        this.reject = context.getRuntime().export("promise_reject_wasm");
+        this.close = context.getRuntime().export("promise_close_wasm");
         this.context.completableFutures.add(this);
         this.completableFuturePtr = this.context.completableFutures.size() - 1;
         this.promisePtr = promisePtr;
@@ -55,9 +55,9 @@ final class QuickJSPromise extends CompletableFuture<Object> {
      */
     QuickJSPromise(QuickJSContext context) {
         this.context = context;
-        this.resolve = context.getRuntime().getInstance().export("promise_resolve_wasm");
-        this.reject = context.getRuntime().getInstance().export("promise_reject_wasm");
-        this.close = context.getRuntime().getInstance().export("promise_close_wasm");
+        this.resolve = context.getRuntime().export("promise_resolve_wasm");
+        this.reject = context.getRuntime().export("promise_reject_wasm");
+        this.close = context.getRuntime().export("promise_close_wasm");
         this.context.completableFutures.add(this);
         this.completableFuturePtr = this.context.completableFutures.size() - 1;
         this.promisePtr = createNativePromise(context, completableFuturePtr);
@@ -163,7 +163,7 @@ final class QuickJSPromise extends CompletableFuture<Object> {
      * @return Pointer to the native JS promise.
      */
     private static long createNativePromise(QuickJSContext context, int completableFutureIndex) {
-        final ExportFunction create = context.getRuntime().getInstance().export("promise_create_wasm");
+        final ExportFunction create = context.getRuntime().export("promise_create_wasm");
         final long[] result = create.apply(context.getContextPointer(), completableFutureIndex);
         final long promisePtr = result[0];
         if (promisePtr == 0l) {
@@ -1,6 +1,9 @@
 package io.github.stefanrichterhuber.quickjswasmjava;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -10,14 +13,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.GlobalInstance;
 import com.dylibso.chicory.runtime.HostFunction;
 import com.dylibso.chicory.runtime.Instance;
-import com.dylibso.chicory.runtime.Store;
-import com.dylibso.chicory.wasi.WasiOptions;
-import com.dylibso.chicory.wasi.WasiPreview1;
-import com.dylibso.chicory.wasm.WasmModule;
-import com.dylibso.chicory.wasm.types.FunctionType;
-import com.dylibso.chicory.wasm.types.ValType;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.MutabilityType;
 
 /**
  * Represents a QuickJS runtime. This is the main entry point for the QuickJS
@@ -69,6 +69,22 @@ public final class QuickJSRuntime implements AutoCloseable {
      * The native dealloc function.
      */
     private final ExportFunction dealloc;
+    /**
+     * The native realloc function.
+     */
+    private final ExportFunction realloc;
+    /**
+     * Scratch region for short-lived arguments of native calls
+     */
+    private final ScratchArena scratchArena = new ScratchArena(this);
+    /**
+     * Address of the result slot of scalar calls, 0 if not yet known
+     */
+    private long scalarResultPtr;
+    /**
+     * Address of the argument area of typed function calls, 0 if not yet known
+     */
+    private long scalarArgsPtr;
     /**
      * The native closeRuntime function.
      */
@@ -80,9 +96,9 @@ public final class QuickJSRuntime implements AutoCloseable {
     private final ExportFunction setMemoryLimit;
 
     /**
-     * Map of contexts belonging to this runtime.
+     * Map of contexts belonging to this runtime, in the order of their creation.
      */
-    private final Map<Long, QuickJSContext> contexts = new HashMap<>();
+    private final Map<Long, QuickJSContext> contexts = new LinkedHashMap<>();
 
     /**
      * Number of milliseconds a script is allowed to run. Defaults to infinite
@@ -97,28 +113,149 @@ public final class QuickJSRuntime implements AutoCloseable {
     private long scriptStartTime = -1;
 
     /**
-     * Creates a new QuickJSRuntime. Loads the wasm library from the classpath and
-     * instantiates it.
+     * Optional cache of compiled scripts used by {@link QuickJSContext#eval(String)}
+     */
+    private BytecodeCache bytecodeCache;
+
+    /**
+     * Optional persistent store of compiled scripts used by
+     * {@link QuickJSContext#eval(String)}
+     */
+    private BytecodeStore bytecodeStore;
+
+    /**
+     * The factory this runtime was created by.
+     */
+    private final QuickJSRuntimeFactory factory;
+
+    /**
+     * Wire format of values transferred to / from the native library, negotiated
+     * at creation
+     */
+    private int wireFormat = MessagePackRegistry.FORMAT_TAGGED;
+
+    /**
+     * Wire format requested from the native library unless enabled otherwise (see
+     * {@link #withLatin1Strings(boolean)})
+     */
+    private static final int DEFAULT_WIRE_FORMAT = MessagePackRegistry.FORMAT_COMPACT;
+
+    /**
+     * Advanced before and after every call into the native library which might run
+     * JS and every call from JS into Java, so it changes whenever control passes
+     * between Java and JS. Native state cached on the Java side which only JS can
+     * change (e.g. the location of the backing store of an array buffer) is valid
+     * as long as the generation is unchanged.
+     */
+    private long generation;
+
+    /**
+     * Creates a new QuickJSRuntime from the default
+     * {@link QuickJSRuntimeFactory}, sharing the parsed wasm library with all
+     * other runtimes.
      * 
      */
     public QuickJSRuntime() {
-        final WasiOptions options = WasiOptions.builder().withStdout(System.out).build();
-        final WasiPreview1 wasi = WasiPreview1.builder().withOptions(options).build();
-        final Store store = new Store().addFunction(wasi.toHostFunctions()).addFunction(createCallHostFunctions());
+        this(QuickJSRuntimeFactory.getDefault());
+    }
 
-        final WasmModule module = WasmLib.load();
-        this.instance = Instance.builder(module).withImportValues(store.toImportValues())
-                .withMachineFactory(WasmLib::create).build();
+    /**
+     * Creates a new QuickJSRuntime. Instantiates the wasm library parsed by the
+     * given factory.
+     * 
+     * @param factory Factory holding the parsed wasm library
+     */
+    QuickJSRuntime(QuickJSRuntimeFactory factory) {
+        this(factory, null);
+    }
+
+    /**
+     * Creates a new QuickJSRuntime. Instantiates the wasm library parsed by the
+     * given factory and either initializes a new native runtime or restores the
+     * runtime and its contexts from the memory image of the given snapshot.
+     * 
+     * @param factory  Factory holding the parsed wasm library
+     * @param snapshot Snapshot to restore, null to initialize a new runtime
+     */
+    QuickJSRuntime(QuickJSRuntimeFactory factory, QuickJSSnapshot snapshot) {
+        this.factory = factory;
+        this.instance = factory.instantiate(createCallHostFunctions());
 
         this.alloc = this.instance.export("alloc");
         this.dealloc = this.instance.export("dealloc");
+        this.realloc = this.instance.export("realloc_buffer");
         this.closeRuntime = this.instance.export("close_runtime_wasm");
         this.setMemoryLimit = this.instance.export("set_memory_limit_runtime_wasm");
 
-        initLogging();
+        if (snapshot == null) {
+            initLogging();
+
+            long[] result = this.instance.export("create_runtime_wasm").apply();
+            this.ptr = result[0];
+            negotiateWireFormat(DEFAULT_WIRE_FORMAT);
+        } else {
+            // The logger and the runtime are part of the memory image
+            restoreMemory(snapshot);
+            this.ptr = snapshot.getRuntimePointer();
+            negotiateWireFormat(DEFAULT_WIRE_FORMAT);
+            this.scriptRuntimeLimit = snapshot.getScriptRuntimeLimit();
+            for (long contextPtr : snapshot.getContextPointers()) {
+                contexts.put(contextPtr, new QuickJSContext(this, contextPtr));
+            }
+            LOGGER.debug("Restored runtime with {} contexts from snapshot", contexts.size());
+        }
+    }
+
+    /**
+     * Negotiates the wire format with the native library. Must be called before
+     * the first context is created.
+     * 
+     * @param requested Newest wire format supported
+     */
+    private void negotiateWireFormat(int requested) {
+        final long[] result = this.instance.export("set_wire_format_runtime_wasm").apply(this.ptr, requested);
+        this.wireFormat = (int) result[0];
+        LOGGER.debug("Requested wire format {}, using {}", requested, this.wireFormat);
+    }
+
+    /**
+     * Returns the wire format of values transferred to / from the native library
+     * 
+     * @return {@link MessagePackRegistry#FORMAT_TAGGED},
+     *         {@link MessagePackRegistry#FORMAT_COMPACT} or
+     *         {@link MessagePackRegistry#FORMAT_LATIN1}
+     */
+    int getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Copies the memory image and the mutable globals of the given snapshot into
+     * the wasm instance
+     * 
+     * @param snapshot Snapshot to restore
+     */
+    private void restoreMemory(QuickJSSnapshot snapshot) {
+        final Memory memory = this.instance.memory();
+        final byte[] image = snapshot.getMemory();
+        final int initialSize = memory.pages() * Memory.PAGE_SIZE;
+        final int missingPages = snapshot.getMemoryPages() - memory.pages();
+        if (missingPages > 0 && memory.grow(missingPages) < 0) {
+            throw new IllegalStateException(
+                    "Failed to grow wasm memory to " + snapshot.getMemoryPages() + " pages");
+        }
+        // Trailing zeros are not part of the image, but the freshly initialized
+        // memory might contain data there
+        if (image.length < initialSize) {
+            memory.fill((byte) 0, image.length, initialSize);
+        }
+        memory.write(0, image);
 
-        long[] result = this.instance.export("create_runtime_wasm").apply();
-        this.ptr = result[0];
+        final int[] globalIndices = snapshot.getGlobalIndices();
+        final long[] globalValues = snapshot.getGlobalValues();
+        for (int i = 0; i < globalIndices.length; i++) {
+            this.instance.global(globalIndices[i]).setValue(globalValues[i]);
+        }
     }
 
     /**
@@ -160,56 +297,12 @@ public final class QuickJSRuntime implements AutoCloseable {
      * @return The host functions.
      */
     private HostFunction[] createCallHostFunctions() {
-        HostFunction hostFunction = new HostFunction(
-                "env",
-                "call_java_function",
-                FunctionType.of(
-                        // First param is the context pointer, second is the function pointer, third is
-                        // the pointer to the message pack object, fourth is the length of the message
-                        // pack object
-                        List.of(ValType.I32, ValType.I32, ValType.I32, ValType.I32),
-                        // Return value is the pointer to the result message pack object and the length
-                        // packed into a i64
-                        List.of(ValType.I64)),
-                this::callHostFunction);
-
-        HostFunction logHostFunction = new HostFunction(
-                "env",
-                "log_java",
-                FunctionType.of(
-                        // First param is the level, second is the pointer to the message string, third
-                        // is the length of the message string
-                        List.of(ValType.I32, ValType.I32, ValType.I32),
-                        List.of()),
-                this::logHostFunction);
-
-        HostFunction interruptHandlerHostFunction = new HostFunction(
-                "env",
-                "js_interrupt_handler",
-                FunctionType.of(
-                        List.of(),
-                        // Return value is 1 if the execution should be interrupted, 0 otherwise
-                        List.of(ValType.I32)),
-                this::interruptHandlerHostFunction);
-
-        HostFunction createCompletableFutureHostFunction = new HostFunction(
-                "env",
-                "create_completable_future",
-                FunctionType.of(
-                        List.of(ValType.I64, ValType.I64),
-                        List.of(ValType.I64)),
-                this::createCompletableFutureHostFunction);
-
-        HostFunction completeCompletableFuture = new HostFunction(
-                "env",
-                "complete_completable_future",
-                FunctionType.of(
-                        List.of(ValType.I64, ValType.I32, ValType.I32, ValType.I32, ValType.I32),
-                        List.of(ValType.I64)),
-                this::completeCompletableFutureHostFunction);
-
-        return new HostFunction[] { hostFunction, logHostFunction, interruptHandlerHostFunction,
-                createCompletableFutureHostFunction, completeCompletableFuture };
+        return new HostFunction[] {
+                QuickJSRuntimeFactory.CALL_JAVA_FUNCTION.bind(this::callHostFunction),
+                QuickJSRuntimeFactory.LOG_JAVA.bind(this::logHostFunction),
+                QuickJSRuntimeFactory.JS_INTERRUPT_HANDLER.bind(this::interruptHandlerHostFunction),
+                QuickJSRuntimeFactory.CREATE_COMPLETABLE_FUTURE.bind(this::createCompletableFutureHostFunction),
+                QuickJSRuntimeFactory.COMPLETE_COMPLETABLE_FUTURE.bind(this::completeCompletableFutureHostFunction) };
     }
 
     /**
@@ -237,23 +330,33 @@ public final class QuickJSRuntime implements AutoCloseable {
      * promises.
      */
     private long[] createCompletableFutureHostFunction(Instance instance, long... args) {
+        generation++;
         long contextPtr = args[0];
         long promisePtr = args[1];
         final QuickJSContext context = contexts.get(contextPtr);
         if (context == null) {
             throw new RuntimeException("Context not found: " + contextPtr);
         }
-        return context.createCompletableFutureHostFunction(instance, promisePtr);
+        try {
+            return context.createCompletableFutureHostFunction(instance, promisePtr);
+        } finally {
+            generation++;
+        }
     }
 
     private long[] completeCompletableFutureHostFunction(Instance instance, long... args) {
+        generation++;
         long contextPtr = (long) args[0];
         final QuickJSContext context = contexts.get(contextPtr);
         if (context == null) {
             throw new RuntimeException("Context not found: " + contextPtr);
         }
-        return context.completeCompletableFutureHostFunction(instance, (int) args[1], (int) args[2], args[3],
-                (int) args[4]);
+        try {
+            return context.completeCompletableFutureHostFunction(instance, (int) args[1], (int) args[2], args[3],
+                    (int) args[4]);
+        } finally {
+            generation++;
+        }
     }
 
     /**
@@ -309,6 +412,75 @@ public final class QuickJSRuntime implements AutoCloseable {
         return this;
     }
 
+    /**
+     * Transfers strings with characters beyond ASCII, which all fit into Latin-1
+     * (e.g. {@code café}), as raw Latin-1 bytes instead of UTF-8 (see
+     * {@link MessagePackRegistry#FORMAT_LATIN1}). This makes the payload smaller
+     * and unpacking such strings on the Java side faster, while the native library
+     * still has to transcode them from / to UTF-8. Disabled by default. Can only
+     * be changed before the first context is created.
+     * 
+     * @param enabled true to transfer Latin-1 strings as raw bytes
+     * @return this QuickJSRuntime instance for method chaining.
+     * @throws IllegalStateException if the runtime is closed or already has
+     *                               contexts
+     */
+    public QuickJSRuntime withLatin1Strings(boolean enabled) {
+        if (isClosed()) {
+            throw new IllegalStateException("Runtime already closed");
+        }
+        if (!contexts.isEmpty()) {
+            throw new IllegalStateException("Wire format can only be changed before the first context is created");
+        }
+        negotiateWireFormat(enabled ? MessagePackRegistry.FORMAT_LATIN1 : DEFAULT_WIRE_FORMAT);
+        return this;
+    }
+
+    /**
+     * Sets a cache for compiled scripts. If set, {@link QuickJSContext#eval(String)}
+     * of all contexts of this runtime only compiles scripts not found in the cache.
+     * The cache might be shared with other runtimes.
+     * 
+     * @param cache Cache to use, null to disable caching
+     * @return this QuickJSRuntime instance for method chaining.
+     */
+    public QuickJSRuntime withBytecodeCache(BytecodeCache cache) {
+        this.bytecodeCache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the cache for compiled scripts
+     * 
+     * @return cache for compiled scripts, null if caching is disabled
+     */
+    public BytecodeCache getBytecodeCache() {
+        return this.bytecodeCache;
+    }
+
+    /**
+     * Sets a persistent store for compiled scripts. If set,
+     * {@link QuickJSContext#eval(String)} of all contexts of this runtime first
+     * looks up the bytecode of a script in the store (after the
+     * {@link BytecodeCache}, if any) and only compiles scripts not found.
+     * 
+     * @param store Store to use, null to disable
+     * @return this QuickJSRuntime instance for method chaining.
+     */
+    public QuickJSRuntime withBytecodeStore(BytecodeStore store) {
+        this.bytecodeStore = store;
+        return this;
+    }
+
+    /**
+     * Returns the persistent store for compiled scripts
+     * 
+     * @return store for compiled scripts, null if disabled
+     */
+    public BytecodeStore getBytecodeStore() {
+        return this.bytecodeStore;
+    }
+
     /**
      * Logs a message from the QuickJS wasm runtime to the native logger.
      * 
@@ -357,6 +529,7 @@ public final class QuickJSRuntime implements AutoCloseable {
      * @return
      */
     private long[] callHostFunction(Instance instance, long... args) {
+        generation++;
         final long contextPtr = args[0];
         final long functionPtr = args[1];
         final long argsPtr = args[2];
@@ -366,7 +539,11 @@ public final class QuickJSRuntime implements AutoCloseable {
         if (context == null) {
             throw new RuntimeException("Context not found: " + contextPtr);
         }
-        return context.callHostFunction(instance, functionPtr, argsPtr, argsLen);
+        try {
+            return context.callHostFunction(instance, functionPtr, argsPtr, argsLen);
+        } finally {
+            generation++;
+        }
     }
 
     /**
@@ -381,6 +558,74 @@ public final class QuickJSRuntime implements AutoCloseable {
         return context;
     }
 
+    /**
+     * Returns all open contexts of this runtime, in the order of their creation.
+     * For runtimes restored from a {@link QuickJSSnapshot} these are the restored
+     * contexts.
+     * 
+     * @return open contexts of this runtime
+     */
+    public List<QuickJSContext> getContexts() {
+        return List.copyOf(contexts.values());
+    }
+
+    /**
+     * Takes a snapshot of the memory image of this runtime and all its contexts.
+     * New runtimes can be restored from the snapshot with
+     * {@link QuickJSSnapshot#restore()} without initializing the runtime, creating
+     * the contexts and evaluating library scripts again.
+     * 
+     * The Java side of a context can not be part of the image. Therefore
+     * snapshots can only be taken if none of the contexts holds Java functions or
+     * handed JS objects, arrays, functions or promises to Java.
+     * 
+     * @return snapshot of this runtime
+     * @throws IllegalStateException if the runtime is closed, a script is running
+     *                               or one of the contexts holds references to
+     *                               Java objects
+     */
+    public QuickJSSnapshot snapshot() {
+        if (isClosed()) {
+            throw new IllegalStateException("Runtime already closed");
+        }
+        if (scriptStartTime > 0) {
+            throw new IllegalStateException("Can not take a snapshot while a script is running");
+        }
+        for (QuickJSContext context : contexts.values()) {
+            if (context.hasJavaReferences()) {
+                throw new IllegalStateException("Can not take a snapshot of context " + context.getContextPointer()
+                        + ": it holds Java functions or references to JS values");
+            }
+        }
+
+        // The scratch arena is owned by this runtime object, not by the native runtime
+        scratchArena.free();
+
+        final Memory memory = this.instance.memory();
+        final int pages = memory.pages();
+        final byte[] bytes = memory.readBytes(0, pages * Memory.PAGE_SIZE);
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            length--;
+        }
+
+        final List<Integer> globalIndices = new ArrayList<>();
+        for (int i = 0; i < this.instance.globalCount(); i++) {
+            final GlobalInstance global = this.instance.global(i);
+            if (global.getMutabilityType() == MutabilityType.Var) {
+                globalIndices.add(i);
+            }
+        }
+        final int[] indices = globalIndices.stream().mapToInt(Integer::intValue).toArray();
+        final long[] values = Arrays.stream(indices).mapToLong(i -> this.instance.global(i).getValue()).toArray();
+
+        final long[] contextPointers = contexts.keySet().stream().mapToLong(Long::longValue).toArray();
+        LOGGER.debug("Took snapshot of runtime with {} contexts and {} bytes of memory", contextPointers.length,
+                length);
+        return new QuickJSSnapshot(factory.getModuleFingerprint(), ptr, contextPointers, scriptRuntimeLimit,
+                indices, values, pages, Arrays.copyOf(bytes, length));
+    }
+
     /**
      * Returns the pointer to the runtime in the wasm library
      * 
@@ -390,6 +635,15 @@ public final class QuickJSRuntime implements AutoCloseable {
         return this.ptr;
     }
 
+    /**
+     * Returns the factory this runtime was created by
+     * 
+     * @return factory of this runtime
+     */
+    QuickJSRuntimeFactory getFactory() {
+        return this.factory;
+    }
+
     /**
      * Returns the instance of the runtime
      * 
@@ -399,6 +653,39 @@ public final class QuickJSRuntime implements AutoCloseable {
         return this.instance;
     }
 
+    /**
+     * Returns the exported function of the native library with the given name.
+     * Every call of the function advances the generation of this runtime before
+     * and after it runs (see {@link #getGeneration()}), so use it for all functions which might run JS.
+     * Functions which never run JS (e.g. memory management) can be taken from
+     * {@link #getInstance()} directly.
+     * 
+     * @param name Name of the exported function
+     * @return exported function
+     */
+    ExportFunction export(String name) {
+        final ExportFunction function = this.instance.export(name);
+        return args -> {
+            generation++;
+            try {
+                return function.apply(args);
+            } finally {
+                generation++;
+            }
+        };
+    }
+
+    /**
+     * Returns the current generation of this runtime. It changes whenever JS
+     * might have run since the last call, including JS which ran after a Java
+     * callback returned.
+     * 
+     * @return current generation
+     */
+    long getGeneration() {
+        return generation;
+    }
+
     /**
      * Writes the given data to memory and returns the memory location of the data
      * 
@@ -411,6 +698,47 @@ public final class QuickJSRuntime implements AutoCloseable {
         return new MemoryLocation(ptr, data.length, this);
     }
 
+    /**
+     * Writes the given data to the scratch arena (or memory, if it does not fit)
+     * and returns the memory location of the data. The location must be freed by
+     * the caller and must not be handed over to the wasm library.
+     * 
+     * @param data the data to write
+     * @return the memory location of the data
+     */
+    MemoryLocation writeToScratch(byte[] data) {
+        final long ptr = scratchArena.allocate(data.length);
+        if (ptr == 0) {
+            return writeToMemory(data);
+        }
+        getInstance().memory().write((int) ptr, data);
+        return new MemoryLocation(ptr, data.length, this);
+    }
+
+    /**
+     * Writes the remaining content of the given buffer to memory and returns the
+     * memory location of the data. The buffer (e.g. a memory mapped file) is
+     * copied in chunks, without copying the whole content to the heap first.
+     * 
+     * @param data the data to write
+     * @return the memory location of the data
+     */
+    MemoryLocation writeToMemory(ByteBuffer data) {
+        final ByteBuffer source = data.duplicate();
+        final int length = source.remaining();
+        final long ptr = alloc(length);
+        final Memory memory = getInstance().memory();
+        final byte[] chunk = new byte[Math.min(length, 64 * 1024)];
+        int offset = 0;
+        while (source.hasRemaining()) {
+            final int n = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, n);
+            memory.write((int) ptr + offset, chunk, 0, n);
+            offset += n;
+        }
+        return new MemoryLocation(ptr, length, this);
+    }
+
     /**
      * Allocates memory
      * 
@@ -422,6 +750,45 @@ public final class QuickJSRuntime implements AutoCloseable {
         return ptr[0];
     }
 
+    /**
+     * Resizes memory allocated with {@link #alloc(int)}, keeping its content (up
+     * to the smaller size)
+     * 
+     * @param ptr     the pointer to the memory to resize
+     * @param size    the current size of the memory
+     * @param newSize the new size of the memory
+     * @return the pointer to the resized memory, the old pointer must not be used
+     *         anymore
+     */
+    long realloc(long ptr, int size, int newSize) {
+        long[] result = realloc.apply(ptr, size, newSize);
+        return result[0];
+    }
+
+    /**
+     * Frees memory written by {@link #writeToMemory(byte[])} or
+     * {@link #writeToScratch(byte[])}
+     * 
+     * @param ptr  the pointer to the memory to free
+     * @param size the size of the memory to free
+     */
+    void free(long ptr, int size) {
+        if (scratchArena.contains(ptr)) {
+            scratchArena.release(ptr, size);
+        } else {
+            dealloc(ptr, size);
+        }
+    }
+
+    /**
+     * Returns the scratch region for short-lived arguments of native calls
+     * 
+     * @return scratch arena of this runtime
+     */
+    ScratchArena getScratchArena() {
+        return scratchArena;
+    }
+
     /**
      * Deallocates memory
      * 
@@ -432,6 +799,89 @@ public final class QuickJSRuntime implements AutoCloseable {
         dealloc.apply(ptr, size);
     }
 
+    /**
+     * Reads the result of the last scalar call (e.g.
+     * {@link QuickJSContext#evalInt(String)}) from the result slot in the wasm
+     * memory
+     * 
+     * @return raw 64 bit result
+     */
+    long readScalarResult() {
+        if (scalarResultPtr == 0) {
+            scalarResultPtr = this.instance.export("scalar_result_ptr_wasm").apply()[0];
+        }
+        return this.instance.memory().readLong((int) scalarResultPtr);
+    }
+
+    /**
+     * Returns the address of the argument area of typed function calls (e.g.
+     * {@link QuickJSFunction#callDouble(double...)}) in the wasm memory. It has
+     * room for {@link QuickJSFunction#MAX_TYPED_ARGS} 64 bit arguments.
+     * 
+     * @return address of the argument area
+     */
+    long getScalarArgsPointer() {
+        if (scalarArgsPtr == 0) {
+            scalarArgsPtr = this.instance.export("scalar_args_ptr_wasm").apply()[0];
+        }
+        return scalarArgsPtr;
+    }
+
+    /**
+     * Returns the current size of the linear memory of the wasm instance in bytes.
+     * Wasm memory never shrinks, so this is also the high-water mark of the
+     * memory ever used by this runtime.
+     * 
+     * @return size of the linear memory in bytes
+     */
+    long getMemorySize() {
+        return (long) getInstance().memory().pages() * Memory.PAGE_SIZE;
+    }
+
+    /**
+     * Checks if this runtime is already closed
+     * 
+     * @return true if the runtime is closed
+     */
+    boolean isClosed() {
+        return ptr == 0;
+    }
+
+    /**
+     * Removes a closed context from this runtime. Called by
+     * {@link QuickJSContext#close()}.
+     * 
+     * @param contextPtr native pointer of the closed context
+     */
+    void removeContext(long contextPtr) {
+        contexts.remove(contextPtr);
+    }
+
+    /**
+     * Resets the runtime to a clean state, so it can be reused: all contexts (and
+     * with them all dependent objects, arrays, functions and promises) are closed
+     * and a running script duration is cleared.
+     * 
+     * @throws Exception if closing one of the contexts fails
+     */
+    void reset() throws Exception {
+        closeContexts();
+        this.scriptStartTime = -1;
+    }
+
+    /**
+     * Closes all contexts of this runtime
+     * 
+     * @throws Exception if closing one of the contexts fails
+     */
+    private void closeContexts() throws Exception {
+        // Copy the contexts, since closing a context removes it from the map
+        for (QuickJSContext context : List.copyOf(contexts.values())) {
+            context.close();
+        }
+        contexts.clear();
+    }
+
     /**
      * Closes the runtime and all associated contexts
      */
@@ -442,10 +892,7 @@ public final class QuickJSRuntime implements AutoCloseable {
             return;
         }
 
-        for (QuickJSContext context : contexts.values()) {
-            context.close();
-        }
-        contexts.clear();
+        closeContexts();
 
         try {
             closeRuntime.apply(getRuntimePointer());
@@ -0,0 +1,195 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.ImportValues;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Store;
+import com.dylibso.chicory.runtime.WasmFunctionHandle;
+import com.dylibso.chicory.wasi.WasiOptions;
+import com.dylibso.chicory.wasi.WasiPreview1;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.FunctionType;
+import com.dylibso.chicory.wasm.types.ValType;
+
+/**
+ * Creates {@link QuickJSRuntime}s. Parsing the wasm module and building the
+ * descriptors of the imported host functions is done only once per JVM, each
+ * runtime created by this factory only allocates its own wasm instance (linear
+ * memory and instance state).
+ */
+public final class QuickJSRuntimeFactory {
+    private static final Logger LOGGER = LogManager.getLogger(QuickJSRuntimeFactory.class);
+
+    /**
+     * Describes a function imported by the wasm library from the host. The
+     * implementation is bound to the individual runtime when the runtime is
+     * instantiated.
+     */
+    record HostFunctionDescriptor(String module, String name, FunctionType type) {
+        /**
+         * Binds the given implementation to this descriptor
+         *
+         * @param handle Implementation of the host function
+         * @return Host function to import into the wasm instance
+         */
+        HostFunction bind(WasmFunctionHandle handle) {
+            return new HostFunction(module, name, type, handle);
+        }
+    }
+
+    static final HostFunctionDescriptor CALL_JAVA_FUNCTION = new HostFunctionDescriptor(
+            "env",
+            "call_java_function",
+            FunctionType.of(
+                    // First param is the context pointer, second is the function pointer, third is
+                    // the pointer to the message pack object, fourth is the length of the message
+                    // pack object
+                    List.of(ValType.I32, ValType.I32, ValType.I32, ValType.I32),
+                    // Return value is the pointer to the result message pack object and the length
+                    // packed into a i64
+                    List.of(ValType.I64)));
+
+    static final HostFunctionDescriptor LOG_JAVA = new HostFunctionDescriptor(
+            "env",
+            "log_java",
+            FunctionType.of(
+                    // First param is the level, second is the pointer to the message string, third
+                    // is the length of the message string
+                    List.of(ValType.I32, ValType.I32, ValType.I32),
+                    List.of()));
+
+    static final HostFunctionDescriptor JS_INTERRUPT_HANDLER = new HostFunctionDescriptor(
+            "env",
+            "js_interrupt_handler",
+            FunctionType.of(
+                    List.of(),
+                    // Return value is 1 if the execution should be interrupted, 0 otherwise
+                    List.of(ValType.I32)));
+
+    static final HostFunctionDescriptor CREATE_COMPLETABLE_FUTURE = new HostFunctionDescriptor(
+            "env",
+            "create_completable_future",
+            FunctionType.of(
+                    List.of(ValType.I64, ValType.I64),
+                    List.of(ValType.I64)));
+
+    static final HostFunctionDescriptor COMPLETE_COMPLETABLE_FUTURE = new HostFunctionDescriptor(
+            "env",
+            "complete_completable_future",
+            FunctionType.of(
+                    List.of(ValType.I64, ValType.I32, ValType.I32, ValType.I32, ValType.I32),
+                    List.of(ValType.I64)));
+
+    /**
+     * Lazy holder of the default factory, so the module is only parsed on first
+     * use
+     */
+    private static final class DefaultHolder {
+        private static final QuickJSRuntimeFactory INSTANCE = new QuickJSRuntimeFactory();
+    }
+
+    /**
+     * The parsed wasm module shared by all runtimes
+     */
+    private final WasmModule module;
+
+    /**
+     * WASI options shared by all runtimes
+     */
+    private final WasiOptions wasiOptions;
+
+    /**
+     * Fingerprint of the wasm module. Memory images (snapshots) are only valid for
+     * the exact module they were taken from.
+     */
+    private final String moduleFingerprint;
+
+    private QuickJSRuntimeFactory() {
+        final long start = System.nanoTime();
+        this.module = WasmLib.load();
+        this.wasiOptions = WasiOptions.builder().withStdout(System.out).build();
+        // The digest is not calculated if disabled by the parser configuration
+        this.moduleFingerprint = module.digest() != null ? module.digest()
+                : "hash:" + Integer.toHexString(module.hashCode());
+        LOGGER.debug("Loaded QuickJS wasm module in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns the default factory, sharing the parsed wasm module within the JVM
+     *
+     * @return default factory
+     */
+    public static QuickJSRuntimeFactory getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new QuickJSRuntime
+     *
+     * @return new runtime
+     */
+    public QuickJSRuntime create() {
+        return new QuickJSRuntime(this);
+    }
+
+    /**
+     * Creates a new QuickJSRuntime from the memory image of the given snapshot,
+     * skipping the initialization of the runtime and its contexts.
+     *
+     * @param snapshot Snapshot to restore
+     * @return new runtime
+     * @throws IllegalArgumentException if the snapshot was taken from a different
+     *                                  wasm module
+     */
+    public QuickJSRuntime restore(QuickJSSnapshot snapshot) {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Snapshot to restore must not be null");
+        }
+        if (!moduleFingerprint.equals(snapshot.getModuleFingerprint())) {
+            throw new IllegalArgumentException("Snapshot was taken from a different wasm module: "
+                    + snapshot.getModuleFingerprint() + " (expected " + moduleFingerprint + ")");
+        }
+        return new QuickJSRuntime(this, snapshot);
+    }
+
+    /**
+     * Instantiates the wasm module for the given runtime
+     *
+     * @param hostFunctions host functions bound to the runtime
+     * @return new wasm instance
+     */
+    Instance instantiate(HostFunction[] hostFunctions) {
+        // WASI keeps (file descriptor) state per instance, so it can't be shared
+        final WasiPreview1 wasi = WasiPreview1.builder().withOptions(wasiOptions).build();
+        final ImportValues imports = new Store()
+                .addFunction(wasi.toHostFunctions())
+                .addFunction(hostFunctions)
+                .toImportValues();
+
+        return Instance.builder(module).withImportValues(imports)
+                .withMachineFactory(WasmLib::create).build();
+    }
+
+    /**
+     * Returns the parsed wasm module
+     *
+     * @return wasm module
+     */
+    WasmModule getModule() {
+        return module;
+    }
+
+    /**
+     * Returns the fingerprint of the parsed wasm module
+     *
+     * @return fingerprint of the wasm module
+     */
+    String getModuleFingerprint() {
+        return moduleFingerprint;
+    }
+}
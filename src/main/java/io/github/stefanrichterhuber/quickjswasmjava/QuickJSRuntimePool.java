@@ -0,0 +1,476 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pool of pre-instantiated {@link QuickJSRuntime}s. Creating a runtime is
+ * expensive (the wasm module has to be instantiated and the native runtime
+ * created), so this pool keeps a number of spare runtimes ready to be borrowed.
+ * Spare runtimes are refilled in the background, runtimes idle for too long
+ * are evicted.
+ * <p>
+ * Borrowed runtimes must be returned using
+ * {@link #returnRuntime(QuickJSRuntime)}. On return the runtime is reset: all
+ * its contexts (and with them all objects, arrays, functions and promises) are
+ * closed. If the memory of the runtime grew beyond the configured limit, the
+ * runtime is discarded instead of being reused.
+ * <p>
+ * A runtime itself is not thread-safe. The pool, however, can be shared
+ * between threads, as long as each borrowed runtime is only used by one thread
+ * at a time.
+ */
+public final class QuickJSRuntimePool implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(QuickJSRuntimePool.class);
+
+    /**
+     * A runtime waiting in the pool to be borrowed
+     */
+    private record IdleRuntime(QuickJSRuntime runtime, long idleSince) {
+    }
+
+    /**
+     * Offered by {@link #close()} to wake up callers waiting in
+     * {@link #borrow()}. Each woken caller offers it again, so all of them wake
+     * up.
+     */
+    private static final IdleRuntime CLOSED = new IdleRuntime(null, 0);
+
+    /**
+     * Minimum number of spare runtimes kept ready
+     */
+    private final int minIdle;
+
+    /**
+     * Maximum number of runtimes (borrowed and idle) managed by this pool
+     */
+    private final int maxSize;
+
+    /**
+     * Creates the runtimes of this pool
+     */
+    private final Supplier<QuickJSRuntime> factory;
+
+    /**
+     * Spare runtimes ready to be borrowed. Most recently returned runtimes are at
+     * the head of the queue.
+     */
+    private final LinkedBlockingDeque<IdleRuntime> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * Runtimes currently borrowed from this pool
+     */
+    private final Set<QuickJSRuntime> borrowed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of runtimes (borrowed and idle) currently managed by this pool
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Background thread to refill and evict idle runtimes
+     */
+    private final ScheduledExecutorService maintenance;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Number of milliseconds a spare runtime (exceeding the minimum number of
+     * spare runtimes) may idle before it is evicted. Defaults to 60 seconds.
+     */
+    private volatile long idleTimeout = TimeUnit.SECONDS.toMillis(60);
+
+    /**
+     * Memory size in bytes, a returned runtime may have grown to and still be
+     * reused. A value of 0 (default) disables this check.
+     */
+    private volatile long maxRuntimeMemory = 0;
+
+    /**
+     * Cache of compiled scripts shared by all runtimes of this pool, null if
+     * disabled
+     */
+    private volatile BytecodeCache bytecodeCache;
+
+    /**
+     * Persistent store of compiled scripts shared by all runtimes of this pool,
+     * null if disabled
+     */
+    private volatile BytecodeStore bytecodeStore;
+
+    /**
+     * Creates a new pool of QuickJS runtimes with runtimes created by the default
+     * {@link QuickJSRuntimeFactory}
+     *
+     * @param minIdle Minimum number of spare runtimes kept ready
+     * @param maxSize Maximum number of runtimes (borrowed and idle)
+     */
+    public QuickJSRuntimePool(int minIdle, int maxSize) {
+        this(minIdle, maxSize, QuickJSRuntimeFactory.getDefault()::create);
+    }
+
+    /**
+     * Creates a new pool of QuickJS runtimes
+     *
+     * @param minIdle Minimum number of spare runtimes kept ready
+     * @param maxSize Maximum number of runtimes (borrowed and idle)
+     * @param factory Creates new runtimes for this pool
+     */
+    public QuickJSRuntimePool(int minIdle, int maxSize, Supplier<QuickJSRuntime> factory) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("Minimum number of idle runtimes must not be lower than 0");
+        }
+        if (maxSize < 1 || maxSize < minIdle) {
+            throw new IllegalArgumentException(
+                    "Maximum pool size must be at least 1 and not lower than the minimum number of idle runtimes");
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("Runtime factory must not be null");
+        }
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "quickjs-runtime-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Pre-warm the pool
+        refill();
+        this.maintenance.scheduleWithFixedDelay(this::maintain, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the time a spare runtime (exceeding the minimum number of spare
+     * runtimes) may idle before it is evicted.
+     *
+     * @param timeout Idle timeout
+     * @param unit    Time unit of the timeout
+     * @return this QuickJSRuntimePool instance for method chaining.
+     */
+    public QuickJSRuntimePool withIdleTimeout(long timeout, TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("Time unit cannot be null");
+        }
+        this.idleTimeout = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * Sets the memory size a returned runtime may have grown to and still be
+     * reused. Runtimes exceeding this limit are closed on return and replaced by
+     * fresh ones. A value of 0 (default) disables this check.
+     *
+     * @param limit memory limit in bytes
+     * @return this QuickJSRuntimePool instance for method chaining.
+     */
+    public QuickJSRuntimePool withMaxRuntimeMemory(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be lower than 0");
+        }
+        this.maxRuntimeMemory = limit;
+        return this;
+    }
+
+    /**
+     * Sets a cache of compiled scripts shared by all runtimes of this pool. See
+     * {@link QuickJSRuntime#withBytecodeCache(BytecodeCache)}.
+     *
+     * @param cache Cache to use, null to disable caching
+     * @return this QuickJSRuntimePool instance for method chaining.
+     */
+    public QuickJSRuntimePool withBytecodeCache(BytecodeCache cache) {
+        this.bytecodeCache = cache;
+        return this;
+    }
+
+    /**
+     * Sets a persistent store of compiled scripts shared by all runtimes of this
+     * pool. See {@link QuickJSRuntime#withBytecodeStore(BytecodeStore)}.
+     *
+     * @param store Store to use, null to disable
+     * @return this QuickJSRuntimePool instance for method chaining.
+     */
+    public QuickJSRuntimePool withBytecodeStore(BytecodeStore store) {
+        this.bytecodeStore = store;
+        return this;
+    }
+
+    /**
+     * Borrows a runtime from the pool. Waits until a runtime is available, if the
+     * maximum number of runtimes is already borrowed.
+     *
+     * @return Borrowed runtime, must be returned with
+     *         {@link #returnRuntime(QuickJSRuntime)}
+     * @throws InterruptedException  if interrupted while waiting for a runtime
+     * @throws IllegalStateException if the pool is (or gets) closed
+     */
+    public QuickJSRuntime borrow() throws InterruptedException {
+        try {
+            return borrow(-1, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Impossible without timeout
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Borrows a runtime from the pool. Waits at most the given time until a
+     * runtime is available, if the maximum number of runtimes is already
+     * borrowed.
+     *
+     * @param timeout Maximum time to wait. Negative values wait infinitely.
+     * @param unit    Time unit of the timeout
+     * @return Borrowed runtime, must be returned with
+     *         {@link #returnRuntime(QuickJSRuntime)}
+     * @throws InterruptedException if interrupted while waiting for a runtime
+     * @throws TimeoutException     if no runtime was available in time
+     * @throws IllegalStateException if the pool is (or gets) closed
+     */
+    public QuickJSRuntime borrow(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (closed.get()) {
+            throw new IllegalStateException("QuickJSRuntimePool already closed");
+        }
+
+        IdleRuntime next = idle.pollFirst();
+        if (next == null && tryReserve()) {
+            try {
+                next = new IdleRuntime(factory.get(), System.currentTimeMillis());
+                LOGGER.debug("Created new runtime on demand");
+            } catch (RuntimeException e) {
+                size.decrementAndGet();
+                throw e;
+            }
+        }
+        if (next == null) {
+            next = timeout < 0 ? idle.takeFirst() : idle.pollFirst(timeout, unit);
+            if (next == null) {
+                throw new TimeoutException("No QuickJS runtime available within " + timeout + " " + unit);
+            }
+        }
+        if (next == CLOSED) {
+            // Wake up the next waiting caller as well
+            idle.offerFirst(CLOSED);
+            throw new IllegalStateException("QuickJSRuntimePool closed while waiting for a runtime");
+        }
+        if (closed.get()) {
+            // Closed concurrently, never hand out a runtime of a closed pool
+            destroy(next.runtime());
+            throw new IllegalStateException("QuickJSRuntimePool already closed");
+        }
+
+        final BytecodeCache cache = this.bytecodeCache;
+        if (cache != null) {
+            next.runtime().withBytecodeCache(cache);
+        }
+        final BytecodeStore store = this.bytecodeStore;
+        if (store != null) {
+            next.runtime().withBytecodeStore(store);
+        }
+        borrowed.add(next.runtime());
+        scheduleRefill();
+        return next.runtime();
+    }
+
+    /**
+     * Returns a borrowed runtime to the pool. The runtime is reset and must no
+     * longer be used by the caller.
+     *
+     * @param runtime Runtime to return
+     */
+    public void returnRuntime(QuickJSRuntime runtime) {
+        if (runtime == null || !borrowed.remove(runtime)) {
+            throw new IllegalArgumentException("Runtime was not borrowed from this pool");
+        }
+
+        boolean reusable = !closed.get() && !runtime.isClosed();
+        if (reusable) {
+            try {
+                runtime.reset();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to reset returned runtime, discarding it", e);
+                reusable = false;
+            }
+        }
+        if (reusable && maxRuntimeMemory > 0 && runtime.getMemorySize() > maxRuntimeMemory) {
+            LOGGER.debug("Returned runtime grew to {} bytes (limit {} bytes), discarding it",
+                    runtime.getMemorySize(), maxRuntimeMemory);
+            reusable = false;
+        }
+
+        if (reusable) {
+            final IdleRuntime entry = new IdleRuntime(runtime, System.currentTimeMillis());
+            idle.offerFirst(entry);
+            if (closed.get() && idle.remove(entry)) {
+                // Closed concurrently after the pool was drained
+                destroy(runtime);
+            }
+        } else {
+            destroy(runtime);
+            scheduleReplacement();
+        }
+    }
+
+    /**
+     * Returns the number of spare runtimes currently waiting in the pool
+     *
+     * @return number of idle runtimes
+     */
+    public int getIdleCount() {
+        return closed.get() ? 0 : idle.size();
+    }
+
+    /**
+     * Returns the number of runtimes currently borrowed from the pool
+     *
+     * @return number of borrowed runtimes
+     */
+    public int getBorrowedCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * Tries to reserve a slot for a new runtime
+     *
+     * @return true if a new runtime may be created
+     */
+    private boolean tryReserve() {
+        while (true) {
+            final int current = size.get();
+            if (current >= maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Closes a runtime and frees its slot in the pool
+     *
+     * @param runtime Runtime to close
+     */
+    private void destroy(QuickJSRuntime runtime) {
+        size.decrementAndGet();
+        try {
+            if (!runtime.isClosed()) {
+                runtime.close();
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Error closing pooled runtime", e);
+        }
+    }
+
+    /**
+     * Asynchronously refills the pool with spare runtimes
+     */
+    private void scheduleRefill() {
+        if (!closed.get() && idle.size() < minIdle) {
+            try {
+                maintenance.execute(this::refill);
+            } catch (RuntimeException e) {
+                // Pool closed concurrently
+                LOGGER.debug("Failed to schedule refill of runtime pool", e);
+            }
+        }
+    }
+
+    /**
+     * Asynchronously creates a replacement for a discarded runtime, so callers
+     * waiting in {@link #borrow()} are served even if no minimum number of spare
+     * runtimes is configured
+     */
+    private void scheduleReplacement() {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                if (!closed.get() && tryReserve()) {
+                    try {
+                        idle.offerLast(new IdleRuntime(factory.get(), System.currentTimeMillis()));
+                    } catch (RuntimeException e) {
+                        size.decrementAndGet();
+                        LOGGER.error("Failed to create replacement runtime", e);
+                    }
+                }
+                refill();
+            });
+        } catch (RuntimeException e) {
+            // Pool closed concurrently
+            LOGGER.debug("Failed to schedule replacement of discarded runtime", e);
+        }
+    }
+
+    /**
+     * Creates new spare runtimes until the minimum number of idle runtimes is
+     * reached (or the maximum pool size)
+     */
+    private void refill() {
+        while (!closed.get() && idle.size() < minIdle && tryReserve()) {
+            try {
+                idle.offerLast(new IdleRuntime(factory.get(), System.currentTimeMillis()));
+                LOGGER.debug("Created spare runtime, {} runtimes idle", idle.size());
+            } catch (RuntimeException e) {
+                size.decrementAndGet();
+                LOGGER.error("Failed to create spare runtime", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Periodic maintenance: evicts runtimes idle for too long and refills the
+     * pool
+     */
+    private void maintain() {
+        final long now = System.currentTimeMillis();
+        final Iterator<IdleRuntime> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minIdle) {
+            final IdleRuntime candidate = it.next();
+            if (now - candidate.idleSince() > idleTimeout && idle.remove(candidate)) {
+                LOGGER.debug("Evicting runtime idle for {} ms", now - candidate.idleSince());
+                destroy(candidate.runtime());
+            }
+        }
+        refill();
+    }
+
+    /**
+     * Closes the pool and all idle runtimes. Runtimes still borrowed are closed on
+     * return. Callers waiting in {@link #borrow()} fail with an
+     * {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        maintenance.shutdownNow();
+        try {
+            maintenance.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IdleRuntime next;
+        while ((next = idle.pollFirst()) != null) {
+            destroy(next.runtime());
+        }
+        idle.offerLast(CLOSED);
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+
+import io.github.stefanrichterhuber.quickjswasmjava.QuickJSRuntime.ScriptDurationGuard;
+
+/**
+ * Represents a script compiled to QuickJS bytecode by
+ * {@link QuickJSContext#compile(String, String)}. The script is parsed and
+ * compiled only once and can be run any number of times in the context it was
+ * compiled in.
+ */
+public final class QuickJSScript {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * The context this script belongs to.
+     */
+    private final QuickJSContext context;
+    /**
+     * The name of the script.
+     */
+    private final String name;
+    /**
+     * The pointer to the compiled script in the wasm library.
+     */
+    private long scriptPtr;
+    /**
+     * The native run function.
+     */
+    private final ExportFunction run;
+
+    private final ExportFunction close;
+
+    /**
+     * Creates a new QuickJSScript
+     *
+     * @param context   the context to use
+     * @param name      the name of the script
+     * @param scriptPtr the pointer to the compiled script in the wasm library
+     */
+    QuickJSScript(QuickJSContext context, String name, long scriptPtr) {
+        this.context = context;
+        this.name = name;
+        this.scriptPtr = scriptPtr;
+        this.run = context.getRuntime().export("run_script_wasm");
+        this.close = context.getRuntime().export("close_script_wasm");
+        context.addDependentResource(this::close);
+    }
+
+    /**
+     * Runs the compiled script
+     *
+     * @return The result of the script.
+     */
+    public Object run() {
+        return run(null);
+    }
+
+    /**
+     * Runs the compiled script. All bindings are set as global variables in the
+     * context before the script is run.
+     *
+     * @param bindings Global variables to set before running the script (might be
+     *                 null)
+     * @return The result of the script.
+     */
+    public Object run(Map<String, Object> bindings) {
+        try (final MemoryLocation bindingsLocation = context.writeToMemory(bindings);
+                final ScriptDurationGuard guard = new ScriptDurationGuard(this.context.getRuntime())) {
+            final long[] result = run.apply(getContextPointer(), getScriptPointer(), bindingsLocation.pointer(),
+                    bindingsLocation.length());
+            return this.context.handleNativeResult(result);
+        }
+    }
+
+    /**
+     * Closes the script
+     *
+     * @throws Exception
+     */
+    private void close() throws Exception {
+        LOGGER.debug("Closing QuickJSScript with pointer {}", scriptPtr);
+
+        if (this.scriptPtr != 0) {
+            this.close.apply(getContextPointer(), scriptPtr);
+            this.scriptPtr = 0;
+        } else {
+            LOGGER.debug("QuickJSScript already closed!");
+        }
+    }
+
+    /**
+     * Returns the name of the script
+     *
+     * @return name of the script
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the pointer to the compiled script in the wasm library
+     *
+     * @return native pointer of the script
+     */
+    long getScriptPointer() {
+        if (scriptPtr == 0) {
+            throw new IllegalStateException("Script already closed");
+        }
+        return scriptPtr;
+    }
+
+    /**
+     * Returns the native pointer to the quick js context
+     *
+     * @return native pointer of the context
+     */
+    long getContextPointer() {
+        return context.getContextPointer();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("script %s", name);
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Memory image of an initialized {@link QuickJSRuntime} and its contexts. The
+ * snapshot contains the linear memory of the wasm instance, its mutable globals
+ * and the native pointers of the runtime and its contexts. Restoring a snapshot
+ * creates a new runtime with a bulk copy of the memory image instead of
+ * initializing the runtime, creating the contexts and evaluating all library
+ * scripts again (similar to Wizer pre-initialization).
+ *
+ * Snapshots are immutable and can be restored any number of times. They can be
+ * serialized with {@link #writeTo(OutputStream)} / {@link #toByteArray()} (e.g.
+ * to ship them as a resource) and are only valid for the exact wasm module they
+ * were taken from.
+ */
+public final class QuickJSSnapshot {
+    /**
+     * Magic bytes of a serialized snapshot ("QJSS")
+     */
+    private static final int MAGIC = 0x514A5353;
+
+    /**
+     * Version of the serialization format
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Fingerprint of the wasm module the snapshot was taken from
+     */
+    private final String moduleFingerprint;
+
+    /**
+     * Native pointer of the runtime
+     */
+    private final long runtimePointer;
+
+    /**
+     * Native pointers of the contexts, in the order of their creation
+     */
+    private final long[] contextPointers;
+
+    /**
+     * Script runtime limit of the runtime in milliseconds
+     */
+    private final long scriptRuntimeLimit;
+
+    /**
+     * Indices of the mutable wasm globals
+     */
+    private final int[] globalIndices;
+
+    /**
+     * Values of the mutable wasm globals
+     */
+    private final long[] globalValues;
+
+    /**
+     * Number of pages of the linear memory
+     */
+    private final int memoryPages;
+
+    /**
+     * Content of the linear memory. Trailing zero bytes are not included.
+     */
+    private final byte[] memory;
+
+    QuickJSSnapshot(String moduleFingerprint, long runtimePointer, long[] contextPointers, long scriptRuntimeLimit,
+            int[] globalIndices, long[] globalValues, int memoryPages, byte[] memory) {
+        this.moduleFingerprint = moduleFingerprint;
+        this.runtimePointer = runtimePointer;
+        this.contextPointers = contextPointers;
+        this.scriptRuntimeLimit = scriptRuntimeLimit;
+        this.globalIndices = globalIndices;
+        this.globalValues = globalValues;
+        this.memoryPages = memoryPages;
+        this.memory = memory;
+    }
+
+    /**
+     * Creates a new runtime from this snapshot using the default
+     * {@link QuickJSRuntimeFactory}.
+     *
+     * @return new runtime with all contexts of the snapshot
+     */
+    public QuickJSRuntime restore() {
+        return QuickJSRuntimeFactory.getDefault().restore(this);
+    }
+
+    /**
+     * Writes this snapshot to the given stream. The stream is not closed.
+     *
+     * @param out Stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeUTF(moduleFingerprint);
+        header.flush();
+
+        // Memory images mostly consist of zeros, so the body is compressed
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        final DataOutputStream body = new DataOutputStream(deflater);
+        body.writeLong(runtimePointer);
+        body.writeInt(contextPointers.length);
+        for (long contextPointer : contextPointers) {
+            body.writeLong(contextPointer);
+        }
+        body.writeLong(scriptRuntimeLimit);
+        body.writeInt(globalIndices.length);
+        for (int i = 0; i < globalIndices.length; i++) {
+            body.writeInt(globalIndices[i]);
+            body.writeLong(globalValues[i]);
+        }
+        body.writeInt(memoryPages);
+        body.writeInt(memory.length);
+        body.write(memory);
+        body.flush();
+        deflater.finish();
+    }
+
+    /**
+     * Serializes this snapshot
+     *
+     * @return serialized snapshot
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            // Not possible with a ByteArrayOutputStream
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes this snapshot to the given file
+     *
+     * @param file File to write to
+     * @throws IOException if writing the file fails
+     */
+    public void writeTo(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #writeTo(OutputStream)}. The stream is not
+     * closed.
+     *
+     * @param in Stream to read from
+     * @return snapshot read
+     * @throws IOException if reading fails or the stream does not contain a
+     *                     snapshot
+     */
+    public static QuickJSSnapshot read(InputStream in) throws IOException {
+        final DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Stream does not contain a QuickJS snapshot");
+        }
+        final int version = header.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported QuickJS snapshot version " + version);
+        }
+        final String moduleFingerprint = header.readUTF();
+
+        final DataInputStream body = new DataInputStream(new InflaterInputStream(in));
+        final long runtimePointer = body.readLong();
+        final long[] contextPointers = new long[body.readInt()];
+        for (int i = 0; i < contextPointers.length; i++) {
+            contextPointers[i] = body.readLong();
+        }
+        final long scriptRuntimeLimit = body.readLong();
+        final int globalCount = body.readInt();
+        final int[] globalIndices = new int[globalCount];
+        final long[] globalValues = new long[globalCount];
+        for (int i = 0; i < globalCount; i++) {
+            globalIndices[i] = body.readInt();
+            globalValues[i] = body.readLong();
+        }
+        final int memoryPages = body.readInt();
+        final byte[] memory = new byte[body.readInt()];
+        body.readFully(memory);
+
+        return new QuickJSSnapshot(moduleFingerprint, runtimePointer, contextPointers, scriptRuntimeLimit,
+                globalIndices, globalValues, memoryPages, memory);
+    }
+
+    /**
+     * Reads a snapshot serialized by {@link #toByteArray()}
+     *
+     * @param data serialized snapshot
+     * @return snapshot read
+     * @throws IllegalArgumentException if the data does not contain a valid
+     *                                  snapshot
+     */
+    public static QuickJSSnapshot fromByteArray(byte[] data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Snapshot data must not be null");
+        }
+        try {
+            return read(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid QuickJS snapshot", e);
+        }
+    }
+
+    /**
+     * Reads a snapshot from the given file
+     *
+     * @param file File to read from
+     * @return snapshot read
+     * @throws IOException if reading the file fails or it does not contain a
+     *                     snapshot
+     */
+    public static QuickJSSnapshot read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Returns the size of the memory image in bytes
+     *
+     * @return size of the memory image
+     */
+    public int getMemoryImageSize() {
+        return memory.length;
+    }
+
+    String getModuleFingerprint() {
+        return moduleFingerprint;
+    }
+
+    long getRuntimePointer() {
+        return runtimePointer;
+    }
+
+    long[] getContextPointers() {
+        return contextPointers;
+    }
+
+    long getScriptRuntimeLimit() {
+        return scriptRuntimeLimit;
+    }
+
+    int[] getGlobalIndices() {
+        return globalIndices;
+    }
+
+    long[] getGlobalValues() {
+        return globalValues;
+    }
+
+    int getMemoryPages() {
+        return memoryPages;
+    }
+
+    byte[] getMemory() {
+        return memory;
+    }
+}
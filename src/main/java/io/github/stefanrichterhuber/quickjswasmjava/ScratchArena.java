@@ -0,0 +1,190 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+/**
+ * Scratch region in the linear memory of the wasm library for short-lived
+ * arguments (keys, names, small values) passed to the native functions. The
+ * region is allocated once and handed out by bumping a pointer, so writing an
+ * argument does not need an alloc / dealloc call into the wasm library. It is
+ * reset as soon as all its allocations are released again, i.e. after each
+ * top-level call. Requests not fitting into the region fall back to the native
+ * allocator.
+ * <p>
+ * Only memory not handed over to the wasm library may be allocated from the
+ * arena, since the native code would free it with its own allocator.
+ */
+final class ScratchArena {
+    /**
+     * Initial size of the region
+     */
+    static final int INITIAL_CAPACITY = 16 * 1024;
+
+    /**
+     * Maximum size of the region. Larger requests always use the native
+     * allocator.
+     */
+    static final int MAX_CAPACITY = 256 * 1024;
+
+    private final QuickJSRuntime runtime;
+
+    /**
+     * Start of the region, 0 if not yet allocated
+     */
+    private long base;
+    /**
+     * Size of the region
+     */
+    private int capacity;
+    /**
+     * Offset of the first free byte within the region
+     */
+    private int top;
+    /**
+     * Number of allocations not yet released
+     */
+    private int live;
+    /**
+     * True while the remaining region is reserved by {@link #reserve()}
+     */
+    private boolean reserved;
+
+    /**
+     * Creates a new arena. The region is allocated on first use.
+     * 
+     * @param runtime Runtime to allocate the region in
+     */
+    ScratchArena(QuickJSRuntime runtime) {
+        this.runtime = runtime;
+    }
+
+    /**
+     * Allocates memory from the region
+     * 
+     * @param size Number of bytes to allocate
+     * @return pointer to the allocated memory or 0 if the request does not fit
+     *         into the region
+     */
+    long allocate(int size) {
+        if (size <= 0 || reserved) {
+            return 0;
+        }
+        if (live == 0 && size > capacity && size <= MAX_CAPACITY) {
+            grow(size);
+        }
+        if (base == 0 || size > capacity - top) {
+            return 0;
+        }
+        final long ptr = base + top;
+        top += size;
+        live++;
+        return ptr;
+    }
+
+    /**
+     * Reserves the whole remaining region, for data whose size is not known in
+     * advance. The reservation must be finished with either
+     * {@link #commit(int)} or {@link #cancel()}; until then all other requests
+     * fall back to the native allocator.
+     * 
+     * @return pointer to the reserved memory (see {@link #remaining()}) or 0 if
+     *         nothing is available
+     */
+    long reserve() {
+        if (reserved) {
+            return 0;
+        }
+        if (base == 0) {
+            grow(INITIAL_CAPACITY);
+        }
+        if (top >= capacity) {
+            return 0;
+        }
+        reserved = true;
+        return base + top;
+    }
+
+    /**
+     * Returns the number of free bytes in the region
+     * 
+     * @return number of free bytes
+     */
+    int remaining() {
+        return capacity - top;
+    }
+
+    /**
+     * Finishes a reservation, keeping the given number of bytes allocated
+     * 
+     * @param size Number of bytes used of the reservation (greater than 0)
+     */
+    void commit(int size) {
+        if (!reserved || size <= 0 || size > capacity - top) {
+            throw new IllegalStateException("Invalid commit of " + size + " bytes to the scratch arena");
+        }
+        reserved = false;
+        top += size;
+        live++;
+    }
+
+    /**
+     * Finishes a reservation without allocating anything
+     */
+    void cancel() {
+        reserved = false;
+    }
+
+    /**
+     * Checks if the given pointer was allocated from this arena
+     * 
+     * @param ptr Pointer to check
+     * @return true if the pointer is within the region
+     */
+    boolean contains(long ptr) {
+        return base != 0 && ptr >= base && ptr < base + capacity;
+    }
+
+    /**
+     * Releases an allocation. Allocations released in reverse order (as done by
+     * try-with-resources) are immediately reusable, the whole region is reset
+     * once all allocations are released.
+     * 
+     * @param ptr  Pointer of the allocation
+     * @param size Size of the allocation
+     */
+    void release(long ptr, int size) {
+        live--;
+        if (live <= 0) {
+            live = 0;
+            top = 0;
+        } else if (ptr + size == base + top) {
+            top -= size;
+        }
+    }
+
+    /**
+     * Frees the region, if it is not in use. It is allocated again on next use.
+     */
+    void free() {
+        if (base != 0 && live == 0 && !reserved) {
+            runtime.dealloc(base, capacity);
+            base = 0;
+            capacity = 0;
+            top = 0;
+        }
+    }
+
+    /**
+     * Replaces the (unused) region by a larger one
+     * 
+     * @param size Minimum size of the new region
+     */
+    private void grow(int size) {
+        final int newCapacity = Math.min(MAX_CAPACITY,
+                Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, size - 1)) << 1));
+        if (base != 0) {
+            runtime.dealloc(base, capacity);
+        }
+        base = runtime.alloc(newCapacity);
+        capacity = newCapacity;
+        top = 0;
+    }
+}
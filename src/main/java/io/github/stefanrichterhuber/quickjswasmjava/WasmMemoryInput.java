@@ -0,0 +1,58 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.IOException;
+
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferInput;
+
+import com.dylibso.chicory.runtime.Memory;
+
+/**
+ * {@link MessageBufferInput} reading a packed message straight from the linear
+ * memory of the wasm library. Large messages are read in chunks while they are
+ * unpacked, instead of copying the whole message into one (potentially huge)
+ * array first. The memory location must not be freed before unpacking is
+ * complete.
+ */
+final class WasmMemoryInput implements MessageBufferInput {
+    /**
+     * Maximum size of a chunk read from the wasm memory
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Memory memory;
+    private final int pointer;
+    private final int length;
+
+    /**
+     * Number of bytes already read
+     */
+    private int offset;
+
+    /**
+     * Creates a new input
+     * 
+     * @param location Memory location of the packed message
+     */
+    WasmMemoryInput(MemoryLocation location) {
+        this.memory = location.runtime().getInstance().memory();
+        this.pointer = (int) location.pointer();
+        this.length = location.length();
+    }
+
+    @Override
+    public MessageBuffer next() throws IOException {
+        if (offset >= length) {
+            return null;
+        }
+        final int n = Math.min(CHUNK_SIZE, length - offset);
+        final byte[] chunk = memory.readBytes(pointer + offset, n);
+        offset += n;
+        return MessageBuffer.wrap(chunk);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The memory location is freed by its owner
+    }
+}
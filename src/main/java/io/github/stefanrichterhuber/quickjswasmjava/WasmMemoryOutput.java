@@ -0,0 +1,194 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import java.io.IOException;
+
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferOutput;
+
+import com.dylibso.chicory.runtime.Memory;
+
+/**
+ * {@link MessageBufferOutput} streaming the packed bytes straight into a buffer
+ * in the linear memory of the wasm library. The buffer is allocated with the
+ * size of the first flushed chunk and grown by the native realloc function, so
+ * the packed content is neither collected in a {@code ByteArrayOutputStream}
+ * nor copied into a separate array before it is written to the wasm memory.
+ * Short-lived values can be written to the {@link ScratchArena} of the runtime
+ * instead, moving to an allocated buffer only if they outgrow it.
+ */
+final class WasmMemoryOutput implements MessageBufferOutput {
+    /**
+     * Size of the chunk the packer writes into (same as the default buffer size of
+     * msgpack). The packer only requests the size of the next value, smaller
+     * chunks would cause a flush per value.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Minimum capacity of the native buffer once it needs to be grown
+     */
+    private static final int MIN_GROW_CAPACITY = 1024;
+
+    private final QuickJSRuntime runtime;
+    private final Memory memory;
+    private final ScratchArena scratchArena;
+
+    /**
+     * Chunk the packer writes into, reused for all chunks of the same message
+     */
+    private MessageBuffer chunk;
+
+    /**
+     * Pointer to the native buffer, 0 if not yet allocated
+     */
+    private long ptr;
+    /**
+     * Allocated size of the native buffer
+     */
+    private int capacity;
+    /**
+     * Number of bytes written to the native buffer
+     */
+    private int size;
+    /**
+     * True while the buffer is a reservation of the scratch arena
+     */
+    private boolean inScratch;
+
+    /**
+     * Creates a new output
+     * 
+     * @param runtime Runtime to write into
+     * @param scratch True to write into the scratch arena of the runtime, if
+     *                possible. The written memory location must not be handed
+     *                over to the wasm library then.
+     */
+    WasmMemoryOutput(QuickJSRuntime runtime, boolean scratch) {
+        this.runtime = runtime;
+        this.memory = runtime.getInstance().memory();
+        this.scratchArena = scratch ? runtime.getScratchArena() : null;
+        if (scratchArena != null) {
+            this.ptr = scratchArena.reserve();
+            this.inScratch = ptr != 0;
+            this.capacity = inScratch ? scratchArena.remaining() : 0;
+        }
+    }
+
+    @Override
+    public MessageBuffer next(int minimumSize) throws IOException {
+        if (chunk == null || chunk.size() < minimumSize) {
+            chunk = MessageBuffer.allocate(Math.max(CHUNK_SIZE, minimumSize));
+        }
+        return chunk;
+    }
+
+    @Override
+    public void writeBuffer(int length) throws IOException {
+        write(chunk.array(), chunk.arrayOffset(), length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        memory.write((int) (ptr + size), buffer, offset, length);
+        size += length;
+    }
+
+    @Override
+    public void add(byte[] buffer, int offset, int length) throws IOException {
+        // The buffer is copied immediately, so there is no need to keep a reference
+        write(buffer, offset, length);
+    }
+
+    /**
+     * Ensures the native buffer can take the given number of additional bytes
+     * 
+     * @param length number of bytes to write
+     */
+    private void ensureCapacity(int length) {
+        final int required = Math.addExact(size, length);
+        if (required <= capacity) {
+            return;
+        }
+        if (inScratch) {
+            // Outgrew the scratch arena, move the content to an allocated buffer
+            final int newCapacity = Math.max(required, Math.max(MIN_GROW_CAPACITY, capacity));
+            final long newPtr = runtime.alloc(newCapacity);
+            if (size > 0) {
+                memory.copy((int) newPtr, (int) ptr, size);
+            }
+            scratchArena.cancel();
+            inScratch = false;
+            ptr = newPtr;
+            capacity = newCapacity;
+        } else if (ptr == 0) {
+            // Small messages are flushed exactly once, at close, so they are allocated with
+            // their exact size
+            ptr = runtime.alloc(required);
+            capacity = required;
+        } else {
+            final int newCapacity = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(required, Math.max(MIN_GROW_CAPACITY, 2L * capacity)));
+            ptr = runtime.realloc(ptr, capacity, newCapacity);
+            capacity = newCapacity;
+        }
+    }
+
+    /**
+     * Returns the memory location of the written bytes. The native buffer is
+     * shrunk to the written size, so the location can be freed as usual. The
+     * location must be freed by the caller.
+     * 
+     * @return memory location of the written bytes
+     */
+    MemoryLocation toMemoryLocation() {
+        if (inScratch) {
+            if (size == 0) {
+                scratchArena.cancel();
+                inScratch = false;
+                ptr = runtime.alloc(0);
+            } else {
+                scratchArena.commit(size);
+                inScratch = false;
+            }
+        } else if (ptr == 0) {
+            ptr = runtime.alloc(0);
+        } else if (capacity != size) {
+            ptr = runtime.realloc(ptr, capacity, size);
+            capacity = size;
+        }
+        final MemoryLocation location = new MemoryLocation(ptr, size, runtime);
+        ptr = 0;
+        capacity = 0;
+        size = 0;
+        return location;
+    }
+
+    /**
+     * Frees the native buffer, if the packing failed
+     */
+    void free() {
+        if (inScratch) {
+            scratchArena.cancel();
+            inScratch = false;
+            ptr = 0;
+            capacity = 0;
+            size = 0;
+        } else if (ptr != 0) {
+            runtime.dealloc(ptr, capacity);
+            ptr = 0;
+            capacity = 0;
+            size = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // Everything is written immediately
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The native buffer is handed over by toMemoryLocation() or released by free()
+    }
+}
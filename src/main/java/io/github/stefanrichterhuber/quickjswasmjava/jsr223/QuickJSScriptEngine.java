@@ -25,7 +25,7 @@ public class QuickJSScriptEngine extends AbstractScriptEngine implements Invocab
 
     public QuickJSScriptEngine(QuickJSScriptEngineFactory factory) {
         this.factory = factory;
-        this.runtime = new QuickJSRuntime();
+        this.runtime = new QuickJSRuntime().withBytecodeCache(factory.getBytecodeCache());
         this.context = this.runtime.createContext();
     }
 
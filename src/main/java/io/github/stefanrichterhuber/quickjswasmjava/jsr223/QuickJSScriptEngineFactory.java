@@ -6,8 +6,38 @@ import java.util.List;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 
+import io.github.stefanrichterhuber.quickjswasmjava.BytecodeCache;
+
 public class QuickJSScriptEngineFactory implements ScriptEngineFactory {
 
+    /**
+     * Cache of compiled scripts shared by all engines created by this factory,
+     * null if disabled
+     */
+    private volatile BytecodeCache bytecodeCache;
+
+    /**
+     * Sets a cache of compiled scripts shared by all engines created afterwards by
+     * this factory. Recurring scripts passed to
+     * {@link ScriptEngine#eval(String)} are then only compiled once.
+     * 
+     * @param cache Cache to use, null to disable caching
+     * @return this factory for method chaining.
+     */
+    public QuickJSScriptEngineFactory withBytecodeCache(BytecodeCache cache) {
+        this.bytecodeCache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the cache of compiled scripts shared by all engines of this factory
+     * 
+     * @return cache of compiled scripts, null if disabled
+     */
+    public BytecodeCache getBytecodeCache() {
+        return bytecodeCache;
+    }
+
     @Override
     public String getEngineName() {
         return "QuickJS Wasm Java";
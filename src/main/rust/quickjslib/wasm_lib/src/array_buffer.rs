@@ -0,0 +1,66 @@
+use rquickjs::{ArrayBuffer, Context, Ctx, Persistent};
+use wasm_macros::wasm_export;
+
+#[wasm_export]
+pub fn array_buffer_create(
+    ctx: &Ctx<'_>,
+    size: i32,
+) -> rquickjs::Result<Option<Box<Persistent<ArrayBuffer<'static>>>>> {
+    let js_buffer = ArrayBuffer::new(ctx.clone(), vec![0u8; size.max(0) as usize])?;
+    let persistent = Persistent::save(ctx, js_buffer);
+    Ok(Some(Box::new(persistent)))
+}
+
+#[wasm_export]
+pub fn array_buffer_close(_context: &Context, buffer: Box<Persistent<ArrayBuffer<'static>>>) -> bool {
+    drop(buffer);
+    true
+}
+
+/// Returns the location of the backing store of the array buffer within the linear memory, packed like all other
+/// memory locations (pointer in the upper, length in the lower 32 bits). The backing store is owned by the JS
+/// runtime and must not be freed by the host. Returns 0 if the buffer is detached.
+#[wasm_export]
+pub fn array_buffer_data(
+    ctx: &Ctx<'_>,
+    persistent_buffer: &Persistent<ArrayBuffer<'static>>,
+) -> rquickjs::Result<u64> {
+    let buffer = persistent_buffer.clone().restore(ctx)?;
+    Ok(match buffer.as_raw() {
+        Some(raw) if raw.len > 0 => ((raw.ptr.as_ptr() as u64) << 32) | raw.len as u64,
+        _ => 0,
+    })
+}
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::{IntoJs, Runtime, Value};
+
+    use super::*;
+    use crate::js_to_java_proxy::JSJavaProxy;
+
+    #[test]
+    fn test_array_buffer_data() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let persistent = array_buffer_create(&ctx, 8).unwrap().unwrap();
+            let packed = array_buffer_data(&ctx, &persistent).unwrap();
+            assert_eq!(packed & 0xffffffff, 8);
+
+            let value: Value = JSJavaProxy::NativeArrayBuffer(Box::into_raw(persistent) as u64)
+                .into_js(&ctx)
+                .unwrap();
+            ctx.globals().set("buffer", value).unwrap();
+            let length: i32 = ctx.eval("new Uint8Array(buffer).fill(1).length").unwrap();
+            assert_eq!(length, 8);
+
+            let result: JSJavaProxy = ctx.eval("buffer").unwrap();
+            match result {
+                JSJavaProxy::NativeArrayBuffer(_) => {}
+                _ => panic!("Expected an array buffer"),
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+use log::debug;
+use rquickjs::{Array, Ctx, Object, Persistent};
+use wasm_macros::wasm_export;
+
+use crate::js_to_java_proxy::JSJavaProxy;
+use crate::native_array::splice_array;
+
+/// Sets the value of the key of an object, or of the index of an array
+pub(crate) const OP_SET: i32 = 0;
+/// Removes the key from an object, or the element at the index from an array
+pub(crate) const OP_REMOVE: i32 = 1;
+/// Appends the value to an array
+pub(crate) const OP_ADD: i32 = 2;
+/// Returns the value of the key of an object, or of the index of an array
+pub(crate) const OP_GET: i32 = 3;
+
+/// Applies a batch of operations on native objects and arrays with a single call.
+///
+/// # Arguments
+///
+/// * `operations` - Array of operations, each an array of the operation code (see `OP_SET` ...), the target (`NativeObject`
+///   or `NativeArray`), the key (or index) and the value
+///
+/// # Returns
+///
+/// The results of all `OP_GET` operations (in order). The first failing operation aborts the batch, all operations before
+/// it have been applied.
+#[wasm_export]
+pub fn apply_batch(ctx: &Ctx<'_>, operations: JSJavaProxy) -> rquickjs::Result<JSJavaProxy> {
+    let JSJavaProxy::Array(operations) = operations else {
+        return Err(rquickjs::Error::new_from_js("value", "batch"));
+    };
+    debug!("Applying batch of {} operations", operations.len());
+
+    let mut results = Vec::new();
+    for operation in operations {
+        let JSJavaProxy::Array(fields) = operation else {
+            return Err(rquickjs::Error::new_from_js("value", "batch operation"));
+        };
+        let mut fields = fields.into_iter();
+        let (Some(JSJavaProxy::Int(op)), Some(target), Some(key)) = (fields.next(), fields.next(), fields.next()) else {
+            return Err(rquickjs::Error::new_from_js("value", "batch operation"));
+        };
+        let value = fields.next().unwrap_or(JSJavaProxy::Undefined);
+
+        match target {
+            JSJavaProxy::NativeObject(pointer) => {
+                let persistent_object = unsafe { &*(pointer as *mut Persistent<Object>) };
+                let object = persistent_object.clone().restore(ctx)?;
+                match op {
+                    OP_SET => object.set(key, value)?,
+                    OP_REMOVE => object.remove(key)?,
+                    OP_GET => results.push(object.get(key)?),
+                    _ => return Err(rquickjs::Error::new_from_js("value", "object operation")),
+                }
+            }
+            JSJavaProxy::NativeArray(pointer) => {
+                let persistent_array = unsafe { &*(pointer as *mut Persistent<Array>) };
+                let array = persistent_array.clone().restore(ctx)?;
+                let index = match key {
+                    JSJavaProxy::Int(index) => index,
+                    _ => -1,
+                };
+                match op {
+                    OP_SET => array.set(index as usize, value)?,
+                    OP_ADD => array.set(array.len(), value)?,
+                    OP_REMOVE => splice_array(array, index, 1, None)?,
+                    OP_GET => results.push(array.get(index as usize)?),
+                    _ => return Err(rquickjs::Error::new_from_js("value", "array operation")),
+                }
+            }
+            _ => return Err(rquickjs::Error::new_from_js("value", "batch target")),
+        }
+    }
+    Ok(JSJavaProxy::Array(results))
+}
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::{Context, Runtime};
+
+    use super::*;
+
+    fn operation(op: i32, target: &JSJavaProxy, key: JSJavaProxy, value: JSJavaProxy) -> JSJavaProxy {
+        let target = match target {
+            JSJavaProxy::NativeObject(pointer) => JSJavaProxy::NativeObject(*pointer),
+            JSJavaProxy::NativeArray(pointer) => JSJavaProxy::NativeArray(*pointer),
+            _ => panic!("Expected a native object or array"),
+        };
+        JSJavaProxy::Array(vec![JSJavaProxy::Int(op), target, key, value])
+    }
+
+    #[test]
+    fn test_apply_batch() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let object: JSJavaProxy = ctx.eval("globalThis.o = {a: 1}; o").unwrap();
+            let array: JSJavaProxy = ctx.eval("globalThis.l = [1, 2]; l").unwrap();
+
+            let batch = JSJavaProxy::Array(vec![
+                operation(OP_SET, &object, JSJavaProxy::String("b".to_string()), JSJavaProxy::Int(2)),
+                operation(OP_REMOVE, &object, JSJavaProxy::String("a".to_string()), JSJavaProxy::Null),
+                operation(OP_ADD, &array, JSJavaProxy::Null, JSJavaProxy::Int(3)),
+                operation(OP_REMOVE, &array, JSJavaProxy::Int(0), JSJavaProxy::Null),
+                operation(OP_GET, &object, JSJavaProxy::String("b".to_string()), JSJavaProxy::Null),
+                operation(OP_GET, &array, JSJavaProxy::Int(1), JSJavaProxy::Null),
+            ]);
+            let results = apply_batch(&ctx, batch).unwrap();
+            assert_eq!(results, JSJavaProxy::Array(vec![JSJavaProxy::Int(2), JSJavaProxy::Int(3)]));
+
+            let state: String = ctx.eval("JSON.stringify([o, l])").unwrap();
+            assert_eq!(state, "[{\"b\":2},[2,3]]");
+        });
+    }
+}
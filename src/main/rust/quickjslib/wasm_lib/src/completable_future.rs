@@ -198,7 +198,7 @@ impl<'js, P> IntoJsFunc<'js, P> for JavaPromise {
         };
 
         // Serialize args
-        let args = rmp_serde::to_vec(&val).expect("MsgPack encode failed");
+        let args = crate::msgpack::to_vec(&val);
         let args_len = args.len();
         let args_ptr = args.as_ptr();
         std::mem::forget(args); // Prevent drop
@@ -10,6 +10,8 @@ use rquickjs::Runtime;
 use wasm_macros::wasm_export;
 
 use crate::js_to_java_proxy::JSJavaProxy;
+use crate::msgpack;
+use crate::msgpack::Encoded;
 
 pub struct ContextPtr {
     pub ptr: u64,
@@ -39,9 +41,18 @@ pub fn close_context(context: Box<Context>) {
 }
 
 #[wasm_export]
-pub fn eval_script(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<JSJavaProxy> {
+pub fn eval_script(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<Encoded> {
     debug!("Evaluating script: {}", script);
-    ctx.eval(script)
+    let result: rquickjs::Value = ctx.eval(script)?;
+    Encoded::value(result)
+}
+
+/// Evaluates a script and materializes the result (see `Encoded::materialized`)
+#[wasm_export]
+pub fn eval_script_materialized(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<Encoded> {
+    debug!("Evaluating script (materialized): {}", script);
+    let result: rquickjs::Value = ctx.eval(script)?;
+    Encoded::materialized(result)
 }
 
 #[wasm_export]
@@ -78,18 +89,58 @@ pub fn invoke(ctx: &Ctx<'_>, name: String, args: JSJavaProxy) -> rquickjs::Resul
 pub fn set_global(
     ctx: &Ctx<'_>,
     name: String,
-    value: JSJavaProxy,
+    value: &[u8],
 ) -> rquickjs::Result<JSJavaProxy> {
-    debug!("Setting global: {} = {:?}", name, value);
+    debug!("Setting global: {} ({} bytes)", name, value.len());
+    let value = msgpack::decode(ctx, value)?;
     let global = ctx.globals();
-    global.set(name.clone(), value)?;
+    global.set(name, value)?;
     Ok(JSJavaProxy::Null)
 }
 
 #[wasm_export]
-pub fn get_global(ctx: &Ctx<'_>, name: String) -> rquickjs::Result<JSJavaProxy> {
-    let global = ctx.globals();
-    global.get(name.clone())?
+pub fn get_global(ctx: &Ctx<'_>, name: String) -> rquickjs::Result<Encoded> {
+    let value: rquickjs::Value = ctx.globals().get(name)?;
+    Encoded::value(value)
+}
+
+/// Returns a global variable and materializes it (see `Encoded::materialized`)
+#[wasm_export]
+pub fn get_global_materialized(ctx: &Ctx<'_>, name: String) -> rquickjs::Result<Encoded> {
+    let value: rquickjs::Value = ctx.globals().get(name)?;
+    Encoded::materialized(value)
+}
+
+/// Parses the given UTF-8 JSON with the native JSON parser and sets the result as global variable
+#[wasm_export]
+pub fn set_global_json(ctx: &Ctx<'_>, name: String, json: &[u8]) -> rquickjs::Result<JSJavaProxy> {
+    debug!("Setting global {} from {} bytes of JSON", name, json.len());
+    let value = ctx.json_parse(json)?;
+    ctx.globals().set(name, value)?;
+    Ok(JSJavaProxy::Null)
+}
+
+/// Evaluates a script and returns the result serialized with the native `JSON.stringify` as UTF-8 bytes
+#[wasm_export]
+pub fn eval_script_json(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<JSJavaProxy> {
+    debug!("Evaluating script (JSON): {}", script);
+    let result: rquickjs::Value = ctx.eval(script)?;
+    stringify(ctx, result)
+}
+
+/// Returns a global variable serialized with the native `JSON.stringify` as UTF-8 bytes
+#[wasm_export]
+pub fn get_global_json(ctx: &Ctx<'_>, name: String) -> rquickjs::Result<JSJavaProxy> {
+    let value: rquickjs::Value = ctx.globals().get(name)?;
+    stringify(ctx, value)
+}
+
+/// Helper function to serialize a value to JSON. Values without a JSON representation (e.g. undefined) return `Null`.
+fn stringify<'js>(ctx: &Ctx<'js>, value: rquickjs::Value<'js>) -> rquickjs::Result<JSJavaProxy> {
+    match ctx.json_stringify(value)? {
+        Some(json) => Ok(JSJavaProxy::Binary(json.to_string()?.into_bytes())),
+        None => Ok(JSJavaProxy::Null),
+    }
 }
 
 thread_local! {
@@ -101,3 +101,28 @@ impl<'js> FromError<'js> for i32 {
         }
     }
 }
+
+/// Converts a rquickjs::Error into a u64 that can be returned to Java (0, like an empty memory location)
+///
+impl<'js> FromError<'js> for u64 {
+    fn from_err(ctx: &Ctx<'js>, err: rquickjs::Error) -> Self {
+        match err {
+            rquickjs::Error::Exception => {
+                let catch = ctx.catch();
+                if let Some(exception) = catch.as_exception() {
+                    let message = exception.message().unwrap();
+                    let stacktrace = exception.stack().unwrap();
+                    error!("Failed to call js {}: {}", message, stacktrace);
+                    0
+                } else {
+                    error!("Failed to call js {}", err);
+                    0
+                }
+            }
+            _ => {
+                error!("Failed to call js {}", err);
+                0
+            }
+        }
+    }
+}
@@ -5,10 +5,11 @@ pub trait IntoWasmResult {
     fn into_wasm(self) -> u64;
 }
 
-/// Converts a JSJavaProxy into a u64 that can be returned to Java (by serializing it to a byte array with MsgPack)
+/// Converts a JSJavaProxy into a u64 that can be returned to Java (by serializing it to a byte array with MsgPack, in
+/// the negotiated wire format)
 impl IntoWasmResult for JSJavaProxy {
     fn into_wasm(self) -> u64 {
-        let bytes = rmp_serde::to_vec(&self).expect("MsgPack encode failed");
+        let bytes = crate::msgpack::to_vec(&self);
         let len = bytes.len();
         let ptr = bytes.as_ptr();
         std::mem::forget(bytes); // Prevent drop
@@ -3,6 +3,7 @@ use log::error;
 use rquickjs::function::Args;
 use rquickjs::prelude::IntoArgs;
 use rquickjs::Array;
+use rquickjs::ArrayBuffer;
 use rquickjs::Atom;
 use rquickjs::FromAtom;
 use rquickjs::FromJs;
@@ -39,6 +40,8 @@ pub enum JSJavaProxy {
     Object(HashMap<String, JSJavaProxy>),
     /// Fields: Object Pointer
     NativeObject(u64),
+    /// Fields: ArrayBuffer Pointer
+    NativeArrayBuffer(u64),
     /// Fields: Function Name, function pointer
     Function(String, u64),
     /// Fields: Context, function_ptr
@@ -47,6 +50,39 @@ pub enum JSJavaProxy {
     Exception(String, String),
     /// Fields: Pointer to java completable future, Pointer to native promise
     CompletableFuture(i32, u64),
+    /// Fields: Script name, pointer to the compiled script
+    CompiledScript(String, u64),
+    /// Fields: Raw bytes (e.g. serialized bytecode), transferred as message pack binary
+    Binary(#[serde(with = "serde_bytes")] Vec<u8>),
+    /// Fields: Raw little endian content of a Uint8Array (byte[] in java)
+    Uint8Array(#[serde(with = "serde_bytes")] Vec<u8>),
+    /// Fields: Raw little endian content of an Int32Array (int[] in java)
+    Int32Array(#[serde(with = "serde_bytes")] Vec<u8>),
+    /// Fields: Raw little endian content of a Float32Array (float[] in java)
+    Float32Array(#[serde(with = "serde_bytes")] Vec<u8>),
+    /// Fields: Raw little endian content of a Float64Array (double[] in java)
+    Float64Array(#[serde(with = "serde_bytes")] Vec<u8>),
+    /// Fields: Raw little endian content of a BigInt64Array (long[] in java)
+    BigInt64Array(#[serde(with = "serde_bytes")] Vec<u8>),
+}
+
+/// Creates a typed array of the given element type from its raw (little endian) content with a single copy
+macro_rules! typed_array_from_bytes {
+    ($ctx:expr, $bytes:expr, $t:ty) => {{
+        let buffer = rquickjs::ArrayBuffer::new_copy($ctx.clone(), $bytes)?;
+        rquickjs::TypedArray::<$t>::from_arraybuffer(buffer)?.into_js($ctx)
+    }};
+}
+
+/// Returns the raw (little endian) content of a typed array of the given element type, None if the object is not
+/// such a typed array
+macro_rules! typed_array_bytes {
+    ($object:expr, $t:ty) => {
+        $object
+            .as_typed_array::<$t>()
+            .and_then(|array| array.as_bytes())
+            .map(|bytes| bytes.to_vec())
+    };
 }
 
 impl<'js> FromJs<'js> for JSJavaProxy {
@@ -130,6 +166,11 @@ impl<'js> IntoJs<'js> for JSJavaProxy {
                 let object = persistent_object.clone().restore(ctx)?;
                 Ok(object.into_value())
             }
+            JSJavaProxy::NativeArrayBuffer(pointer) => {
+                let persistent_buffer = unsafe { &*(pointer as *mut Persistent<ArrayBuffer>) };
+                let buffer = persistent_buffer.clone().restore(ctx)?;
+                Ok(buffer.into_value())
+            }
             JSJavaProxy::CompletableFuture(future_ptr, promise_ptr) => {
                 let container = unsafe { &*(promise_ptr as *mut PromiseContainer) };
                 let restored_promise = container.promise.clone().restore(ctx)?;
@@ -143,6 +184,20 @@ impl<'js> IntoJs<'js> for JSJavaProxy {
                 )?;
                 Ok(restored_promise.into_value())
             }
+            JSJavaProxy::CompiledScript(name, _ptr) => {
+                // Compiled scripts are only handles for the java side, they must not leak into JS
+                error!("Compiled script {} can not be converted into a JS value", name);
+                Err(rquickjs::Error::new_into_js("compiled script", "value"))
+            }
+            JSJavaProxy::Binary(_) => {
+                error!("Binary data can not be converted into a JS value");
+                Err(rquickjs::Error::new_into_js("binary", "value"))
+            }
+            JSJavaProxy::Uint8Array(bytes) => typed_array_from_bytes!(ctx, bytes, u8),
+            JSJavaProxy::Int32Array(bytes) => typed_array_from_bytes!(ctx, bytes, i32),
+            JSJavaProxy::Float32Array(bytes) => typed_array_from_bytes!(ctx, bytes, f32),
+            JSJavaProxy::Float64Array(bytes) => typed_array_from_bytes!(ctx, bytes, f64),
+            JSJavaProxy::BigInt64Array(bytes) => typed_array_from_bytes!(ctx, bytes, i64),
         };
         result
     }
@@ -224,9 +279,24 @@ impl JSJavaProxy {
             debug!("Created pointer to native array: {}", persistent_array_ptr);
             return Ok(JSJavaProxy::NativeArray(persistent_array_ptr));
         } else if value.is_object() {
-            debug!("Converting js object to java map");
             let object = value.into_object().unwrap();
+            if let Some(typed_array) = JSJavaProxy::convert_typed_array(&object) {
+                debug!("Converted js typed array to java array");
+                return Ok(typed_array);
+            }
             let ctx = object.ctx().clone();
+            if let Some(buffer) = ArrayBuffer::from_object(object.clone()) {
+                debug!("Converting js array buffer to java array buffer");
+
+                let persistent_buffer = Persistent::save(&ctx, buffer);
+                let persistent_buffer_ptr = Box::into_raw(Box::new(persistent_buffer)) as u64;
+                debug!(
+                    "Created pointer to native array buffer: {}",
+                    persistent_buffer_ptr
+                );
+                return Ok(JSJavaProxy::NativeArrayBuffer(persistent_buffer_ptr));
+            }
+            debug!("Converting js object to java map");
 
             let persistent_object = Persistent::save(&ctx, object);
             let persistent_object_ptr = Box::into_raw(Box::new(persistent_object)) as u64;
@@ -243,6 +313,22 @@ impl JSJavaProxy {
         );
         Err(rquickjs::Error::Unknown)
     }
+
+    /// Converts the supported typed arrays (Uint8Array, Int32Array, Float32Array, Float64Array and BigInt64Array)
+    /// to their raw content, which is transferred to java as a whole. All other objects return None.
+    pub(crate) fn convert_typed_array(object: &Object<'_>) -> Option<JSJavaProxy> {
+        if let Some(bytes) = typed_array_bytes!(object, u8) {
+            Some(JSJavaProxy::Uint8Array(bytes))
+        } else if let Some(bytes) = typed_array_bytes!(object, i32) {
+            Some(JSJavaProxy::Int32Array(bytes))
+        } else if let Some(bytes) = typed_array_bytes!(object, f32) {
+            Some(JSJavaProxy::Float32Array(bytes))
+        } else if let Some(bytes) = typed_array_bytes!(object, f64) {
+            Some(JSJavaProxy::Float64Array(bytes))
+        } else {
+            typed_array_bytes!(object, i64).map(JSJavaProxy::BigInt64Array)
+        }
+    }
 }
 
 #[cfg(test)]
@@ -487,6 +573,26 @@ mod tests {
         }
     }
 
+    #[test]
+    fn test_js_java_proxy_typed_array() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let bytes: Vec<u8> = [1.5f64, -2.0].iter().flat_map(|v| v.to_le_bytes()).collect();
+            let value = JSJavaProxy::Float64Array(bytes.clone()).into_js(&ctx).unwrap();
+            ctx.globals().set("values", value).unwrap();
+            let sum: f64 = ctx.eval("values instanceof Float64Array ? values[0] + values[1] : 0").unwrap();
+            assert_eq!(sum, -0.5);
+
+            let result: JSJavaProxy = ctx.eval("values").unwrap();
+            assert_eq!(result, JSJavaProxy::Float64Array(bytes));
+
+            let result: JSJavaProxy = ctx.eval("new Int32Array([1, 2])").unwrap();
+            assert_eq!(result, JSJavaProxy::Int32Array(vec![1, 0, 0, 0, 2, 0, 0, 0]));
+        });
+    }
+
     #[test]
     fn test_js_java_proxy_function_with_call() {
         let rt = Runtime::new().unwrap();
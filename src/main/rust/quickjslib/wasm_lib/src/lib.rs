@@ -1,14 +1,19 @@
 use std::mem;
+mod array_buffer;
+mod batch;
 mod completable_future;
 mod context;
 mod from_error;
 mod into_wasm_result;
 mod java_log;
 mod js_to_java_proxy;
+mod msgpack;
 mod native_array;
 mod native_object;
 mod quickjs_function;
 mod runtime;
+mod scalar;
+mod script;
 
 /// Give the wasm host a way to free memory to prevent leaks
 /// 
@@ -37,3 +42,45 @@ pub unsafe extern "C" fn alloc(size: usize) -> *mut u8 {
     mem::forget(buf); // Prevent Rust from freeing the memory
     ptr
 }
+
+/// Give the wasm host a way to resize memory allocated with `alloc`, keeping its content (up to the smaller size).
+/// Used to grow a buffer the host is streaming data into, without knowing the final size up front.
+///
+/// # Safety
+///
+/// * `ptr` must have been allocated by `alloc` (or `realloc_buffer`) with exactly `size` bytes.
+/// * `ptr` must not be accessed or used after this call, use the returned pointer instead.
+/// * The returned pointer must be deallocated using `dealloc` with `new_size`.
+#[no_mangle]
+pub unsafe extern "C" fn realloc_buffer(ptr: *mut u8, size: usize, new_size: usize) -> *mut u8 {
+    // The allocator copies the whole old allocation on grow (and new_size bytes on shrink), independent of the length
+    let mut buf = unsafe { Vec::<u8>::from_raw_parts(ptr, 0, size) };
+    if new_size > size {
+        buf.reserve_exact(new_size);
+    } else {
+        buf.shrink_to(new_size);
+    }
+    let ptr = buf.as_mut_ptr();
+    mem::forget(buf); // Prevent Rust from freeing the memory
+    ptr
+}
+
+#[cfg(test)]
+mod tests {
+    use super::*;
+
+    #[test]
+    fn test_realloc_buffer() {
+        unsafe {
+            let ptr = alloc(4);
+            std::ptr::copy_nonoverlapping([1u8, 2, 3, 4].as_ptr(), ptr, 4);
+
+            let grown = realloc_buffer(ptr, 4, 1024);
+            assert_eq!(std::slice::from_raw_parts(grown, 4), &[1, 2, 3, 4]);
+
+            let shrunk = realloc_buffer(grown, 1024, 2);
+            assert_eq!(std::slice::from_raw_parts(shrunk, 2), &[1, 2]);
+            dealloc(shrunk, 2);
+        }
+    }
+}
@@ -0,0 +1,800 @@
+//! Streaming conversion between JS values and the MsgPack representation of `JSJavaProxy`. Primitives, plain objects
+//! and arrays are written to (and read from) the MsgPack buffer directly, without building an intermediate
+//! `JSJavaProxy` tree. All other values (functions, promises, handles, typed arrays, ...) are delegated to
+//! `JSJavaProxy`.
+//!
+//! Three wire formats are supported, negotiated with java before the first context is created (see
+//! `negotiate_format`):
+//! * `FORMAT_TAGGED`: the serde representation of `JSJavaProxy`. Every value is a map with a single entry, keyed by
+//!   the name of the variant (`{"nativeObject": 42}`), unit variants are just their name (`"null"`).
+//! * `FORMAT_COMPACT`: every value is the index of the variant as a single byte (a MsgPack positive fixint), followed
+//!   by the same payload as in the tagged format. Unit variants are just their index.
+//! * `FORMAT_LATIN1`: the compact format, but strings with characters beyond ASCII, which all fit into Latin-1, are
+//!   transferred as their raw Latin-1 bytes (tag `LATIN1_STRING`, payload binary). Java creates its compact strings
+//!   from them without decoding UTF-8. The strings are still transcoded from / to UTF-8 here, since QuickJS offers
+//!   no access to the 8 bit representation of its strings.
+//!
+//! Payloads are plain MsgPack, so integers (e.g. pointers) are already stored with the least number of bytes. Values
+//! are always written in the negotiated format, but all formats are accepted when reading.
+
+use std::cell::Cell;
+use std::collections::HashMap;
+use std::fmt::Display;
+
+use log::debug;
+use rmp::Marker;
+use rquickjs::Array;
+use rquickjs::Atom;
+use rquickjs::Ctx;
+use rquickjs::Exception;
+use rquickjs::IntoJs;
+use rquickjs::Object;
+use rquickjs::Type;
+use rquickjs::Value;
+
+use crate::from_error::FromError;
+use crate::into_wasm_result::IntoWasmResult;
+use crate::js_to_java_proxy::JSJavaProxy;
+
+/// Wire format with the variant name as tag (serde representation of `JSJavaProxy`)
+pub(crate) const FORMAT_TAGGED: i32 = 0;
+/// Wire format with the variant index as single byte tag, version 1
+pub(crate) const FORMAT_COMPACT: i32 = 1;
+/// Wire format with the variant index as single byte tag and Latin-1 strings, version 2
+pub(crate) const FORMAT_LATIN1: i32 = 2;
+
+/// Tags of the compact format: the indices of the variants of `JSJavaProxy`, must match the java library
+mod tag {
+    pub const NULL: u8 = 0;
+    pub const UNDEFINED: u8 = 1;
+    pub const STRING: u8 = 2;
+    pub const INT: u8 = 3;
+    pub const FLOAT: u8 = 4;
+    pub const BOOLEAN: u8 = 5;
+    pub const ARRAY: u8 = 6;
+    pub const NATIVE_ARRAY: u8 = 7;
+    pub const OBJECT: u8 = 8;
+    pub const NATIVE_OBJECT: u8 = 9;
+    pub const NATIVE_ARRAY_BUFFER: u8 = 10;
+    pub const FUNCTION: u8 = 11;
+    pub const JAVA_FUNCTION: u8 = 12;
+    pub const EXCEPTION: u8 = 13;
+    pub const COMPLETABLE_FUTURE: u8 = 14;
+    pub const COMPILED_SCRIPT: u8 = 15;
+    pub const BINARY: u8 = 16;
+    pub const UINT8_ARRAY: u8 = 17;
+    pub const INT32_ARRAY: u8 = 18;
+    pub const FLOAT32_ARRAY: u8 = 19;
+    pub const FLOAT64_ARRAY: u8 = 20;
+    pub const BIG_INT64_ARRAY: u8 = 21;
+    /// No variant of its own, decoded as `JSJavaProxy::String`
+    pub const LATIN1_STRING: u8 = 22;
+}
+
+/// Tags of the tagged format, indexed by the tags of the compact format
+const TAG_NAMES: [&str; 23] = [
+    "null",
+    "undefined",
+    "string",
+    "int",
+    "float",
+    "boolean",
+    "array",
+    "nativeArray",
+    "object",
+    "nativeObject",
+    "nativeArrayBuffer",
+    "function",
+    "javaFunction",
+    "exception",
+    "completableFuture",
+    "compiledScript",
+    "binary",
+    "uint8Array",
+    "int32Array",
+    "float32Array",
+    "float64Array",
+    "bigInt64Array",
+    "latin1String",
+];
+
+thread_local! {
+    // The wasm library is single threaded and hosts exactly one runtime
+    static FORMAT: Cell<i32> = const { Cell::new(FORMAT_TAGGED) };
+}
+
+/// Selects the wire format used for all values written from now on. Returns the requested format if it is supported,
+/// otherwise the newest supported format older than the requested one.
+pub(crate) fn negotiate_format(requested: i32) -> i32 {
+    let format = requested.clamp(FORMAT_TAGGED, FORMAT_LATIN1);
+    debug!("Requested wire format {}, using {}", requested, format);
+    FORMAT.with(|f| f.set(format));
+    format
+}
+
+/// Returns true if (a version of) the compact format was negotiated
+fn is_compact() -> bool {
+    FORMAT.with(|f| f.get()) >= FORMAT_COMPACT
+}
+
+/// Returns true if Latin-1 strings were negotiated
+fn is_latin1() -> bool {
+    FORMAT.with(|f| f.get()) >= FORMAT_LATIN1
+}
+
+/// Maximum nesting depth of objects and arrays copied by `Encoded::materialized`
+pub(crate) const MAX_MATERIALIZE_DEPTH: usize = 64;
+
+/// Initial capacity of the buffer of an encoded value. Large enough for all primitives (except long strings) and
+/// handles, so most results are written without growing the buffer.
+const INITIAL_CAPACITY: usize = 64;
+
+/// A value already encoded with MsgPack (in the negotiated format), returned to java as is
+#[derive(Debug)]
+pub struct Encoded(pub Vec<u8>);
+
+impl Encoded {
+    /// Encodes the value like `JSJavaProxy::convert` would convert it
+    pub fn value(value: Value<'_>) -> rquickjs::Result<Encoded> {
+        let mut out = Vec::with_capacity(INITIAL_CAPACITY);
+        write_value(&mut out, value)?;
+        Ok(Encoded(out))
+    }
+
+    /// Encodes the value, but copies plain objects and arrays (recursively) instead of returning handles to them. This
+    /// way the whole value graph is transferred to java at once. All other values (functions, promises, typed
+    /// arrays, instances of classes like Date or Map, ...) are encoded like `value` does. Cyclic values and values nested deeper than
+    /// `MAX_MATERIALIZE_DEPTH` throw a TypeError.
+    pub fn materialized(value: Value<'_>) -> rquickjs::Result<Encoded> {
+        let mut out = Vec::with_capacity(INITIAL_CAPACITY);
+        let mut parents = Vec::new();
+        // The prototype of a new object is the intrinsic Object.prototype, even if globalThis.Object was replaced
+        let object_prototype = Object::new(value.ctx().clone())?.get_prototype();
+        write_materialized(&mut out, value, object_prototype.as_ref(), &mut parents)?;
+        Ok(Encoded(out))
+    }
+}
+
+/// Returns the encoded bytes to java (pointer in the upper, length in the lower 32 bits)
+impl IntoWasmResult for Encoded {
+    fn into_wasm(self) -> u64 {
+        let bytes = self.0;
+        let len = bytes.len();
+        let ptr = bytes.as_ptr();
+        std::mem::forget(bytes); // Prevent drop
+        ((ptr as u64) << 32) | (len as u64)
+    }
+}
+
+/// Encodes the error as `JSJavaProxy::Exception`
+impl<'js> FromError<'js> for Encoded {
+    fn from_err(ctx: &Ctx<'js>, err: rquickjs::Error) -> Self {
+        Encoded(to_vec(&JSJavaProxy::from_err(ctx, err)))
+    }
+}
+
+/// Helper function for writing to a Vec, which never fails
+fn encoded<T, E: std::fmt::Debug>(result: Result<T, E>) {
+    result.expect("MsgPack encode failed");
+}
+
+/// Writes a unit variant of `JSJavaProxy`
+fn write_unit(out: &mut Vec<u8>, tag: u8) {
+    if is_compact() {
+        encoded(rmp::encode::write_pfix(out, tag));
+    } else {
+        encoded(rmp::encode::write_str(out, TAG_NAMES[tag as usize]));
+    }
+}
+
+/// Writes the tag of a (non-unit) `JSJavaProxy` variant, which is followed by its payload
+fn write_tag(out: &mut Vec<u8>, tag: u8) {
+    if is_compact() {
+        encoded(rmp::encode::write_pfix(out, tag));
+    } else {
+        encoded(rmp::encode::write_map_len(out, 1));
+        encoded(rmp::encode::write_str(out, TAG_NAMES[tag as usize]));
+    }
+}
+
+/// Encodes the `JSJavaProxy` in the negotiated format
+pub(crate) fn to_vec(proxy: &JSJavaProxy) -> Vec<u8> {
+    let mut out = Vec::with_capacity(INITIAL_CAPACITY);
+    write_proxy(&mut out, proxy);
+    out
+}
+
+/// Writes the `JSJavaProxy` in the negotiated format
+fn write_proxy(out: &mut Vec<u8>, proxy: &JSJavaProxy) {
+    if !is_compact() {
+        encoded(rmp_serde::encode::write(out, proxy));
+        return;
+    }
+    match proxy {
+        JSJavaProxy::Null => write_unit(out, tag::NULL),
+        JSJavaProxy::Undefined => write_unit(out, tag::UNDEFINED),
+        JSJavaProxy::String(value) => write_string(out, value),
+        JSJavaProxy::Int(value) => {
+            write_tag(out, tag::INT);
+            encoded(rmp::encode::write_sint(out, *value as i64));
+        }
+        JSJavaProxy::Float(value) => {
+            write_tag(out, tag::FLOAT);
+            encoded(rmp::encode::write_f64(out, *value));
+        }
+        JSJavaProxy::Boolean(value) => {
+            write_tag(out, tag::BOOLEAN);
+            encoded(rmp::encode::write_bool(out, *value));
+        }
+        JSJavaProxy::Array(values) => {
+            write_tag(out, tag::ARRAY);
+            encoded(rmp::encode::write_array_len(out, values.len() as u32));
+            for value in values {
+                write_proxy(out, value);
+            }
+        }
+        JSJavaProxy::Object(values) => {
+            write_tag(out, tag::OBJECT);
+            encoded(rmp::encode::write_map_len(out, values.len() as u32));
+            for (key, value) in values {
+                encoded(rmp::encode::write_str(out, key));
+                write_proxy(out, value);
+            }
+        }
+        JSJavaProxy::NativeArray(ptr) => write_pointer(out, tag::NATIVE_ARRAY, *ptr),
+        JSJavaProxy::NativeObject(ptr) => write_pointer(out, tag::NATIVE_OBJECT, *ptr),
+        JSJavaProxy::NativeArrayBuffer(ptr) => write_pointer(out, tag::NATIVE_ARRAY_BUFFER, *ptr),
+        JSJavaProxy::Function(name, ptr) => write_named_pointer(out, tag::FUNCTION, name, *ptr),
+        JSJavaProxy::CompiledScript(name, ptr) => write_named_pointer(out, tag::COMPILED_SCRIPT, name, *ptr),
+        JSJavaProxy::JavaFunction(context, function) => {
+            write_tag(out, tag::JAVA_FUNCTION);
+            encoded(rmp::encode::write_array_len(out, 2));
+            encoded(rmp::encode::write_sint(out, *context as i64));
+            encoded(rmp::encode::write_sint(out, *function as i64));
+        }
+        JSJavaProxy::Exception(message, stacktrace) => {
+            write_tag(out, tag::EXCEPTION);
+            encoded(rmp::encode::write_array_len(out, 2));
+            encoded(rmp::encode::write_str(out, message));
+            encoded(rmp::encode::write_str(out, stacktrace));
+        }
+        JSJavaProxy::CompletableFuture(future, promise) => {
+            write_tag(out, tag::COMPLETABLE_FUTURE);
+            encoded(rmp::encode::write_array_len(out, 2));
+            encoded(rmp::encode::write_sint(out, *future as i64));
+            encoded(rmp::encode::write_uint(out, *promise));
+        }
+        JSJavaProxy::Binary(bytes) => write_binary(out, tag::BINARY, bytes),
+        JSJavaProxy::Uint8Array(bytes) => write_binary(out, tag::UINT8_ARRAY, bytes),
+        JSJavaProxy::Int32Array(bytes) => write_binary(out, tag::INT32_ARRAY, bytes),
+        JSJavaProxy::Float32Array(bytes) => write_binary(out, tag::FLOAT32_ARRAY, bytes),
+        JSJavaProxy::Float64Array(bytes) => write_binary(out, tag::FLOAT64_ARRAY, bytes),
+        JSJavaProxy::BigInt64Array(bytes) => write_binary(out, tag::BIG_INT64_ARRAY, bytes),
+    }
+}
+
+/// Writes a string, as Latin-1 if negotiated and shorter than UTF-8.
+/// ASCII is identical in both encodings and is kept as a (more compact) str.
+fn write_string(out: &mut Vec<u8>, value: &str) {
+    out.reserve(value.len() + 8);
+    if is_latin1() && !value.is_ascii() {
+        let mut len = 0;
+        if value.chars().all(|c| {
+            len += 1;
+            (c as u32) <= 0xFF
+        }) {
+            // Transcoded directly into the output, behind the header
+            write_tag(out, tag::LATIN1_STRING);
+            encoded(rmp::encode::write_bin_len(out, len));
+            out.extend(value.chars().map(|c| c as u8));
+            return;
+        }
+    }
+    write_tag(out, tag::STRING);
+    encoded(rmp::encode::write_str(out, value));
+}
+
+/// Converts Latin-1 bytes to a string
+fn latin1_to_string(bytes: &[u8]) -> String {
+    bytes.iter().map(|&b| b as char).collect()
+}
+
+fn write_pointer(out: &mut Vec<u8>, tag: u8, ptr: u64) {
+    write_tag(out, tag);
+    encoded(rmp::encode::write_uint(out, ptr));
+}
+
+fn write_named_pointer(out: &mut Vec<u8>, tag: u8, name: &str, ptr: u64) {
+    write_tag(out, tag);
+    encoded(rmp::encode::write_array_len(out, 2));
+    encoded(rmp::encode::write_str(out, name));
+    encoded(rmp::encode::write_uint(out, ptr));
+}
+
+fn write_binary(out: &mut Vec<u8>, tag: u8, bytes: &[u8]) {
+    out.reserve(bytes.len() + 8);
+    write_tag(out, tag);
+    encoded(rmp::encode::write_bin(out, bytes));
+}
+
+/// Writes primitives (strings, numbers and booleans). Returns false if the value is no primitive and nothing was
+/// written.
+fn write_primitive(out: &mut Vec<u8>, value: &Value<'_>) -> rquickjs::Result<bool> {
+    match value.type_of() {
+        Type::String => {
+            let string = value.as_string().unwrap().to_string()?;
+            write_string(out, &string);
+        }
+        Type::Int => {
+            write_tag(out, tag::INT);
+            encoded(rmp::encode::write_sint(out, value.as_int().unwrap() as i64));
+        }
+        Type::Float => {
+            write_tag(out, tag::FLOAT);
+            encoded(rmp::encode::write_f64(out, value.as_float().unwrap()));
+        }
+        Type::Bool => {
+            write_tag(out, tag::BOOLEAN);
+            encoded(rmp::encode::write_bool(out, value.as_bool().unwrap()));
+        }
+        _ => return Ok(false),
+    }
+    Ok(true)
+}
+
+/// Writes the supported typed arrays (see `JSJavaProxy::convert_typed_array`) directly from their backing store.
+/// Returns false if the object is no supported typed array and nothing was written.
+fn write_typed_array(out: &mut Vec<u8>, object: &Object<'_>) -> bool {
+    macro_rules! write_bytes_of {
+        ($t:ty, $tag:expr) => {
+            if let Some(bytes) = object.as_typed_array::<$t>().and_then(|array| array.as_bytes()) {
+                write_binary(out, $tag, bytes);
+                return true;
+            }
+        };
+    }
+    write_bytes_of!(u8, tag::UINT8_ARRAY);
+    write_bytes_of!(i32, tag::INT32_ARRAY);
+    write_bytes_of!(f32, tag::FLOAT32_ARRAY);
+    write_bytes_of!(f64, tag::FLOAT64_ARRAY);
+    write_bytes_of!(i64, tag::BIG_INT64_ARRAY);
+    false
+}
+
+/// Writes the value like `JSJavaProxy::convert` would convert it
+pub(crate) fn write_value(out: &mut Vec<u8>, value: Value<'_>) -> rquickjs::Result<()> {
+    if write_primitive(out, &value)? {
+        return Ok(());
+    }
+    if let Some(object) = value.as_object() {
+        if write_typed_array(out, object) {
+            return Ok(());
+        }
+    }
+    let proxy = JSJavaProxy::convert(value)?;
+    write_proxy(out, &proxy);
+    Ok(())
+}
+
+/// Checks if the object is a plain object (created by a literal, `new Object()` or `Object.create(null)`), whose own
+/// properties are all its state. Instances of all other classes (Date, Map, RegExp, typed arrays, ...) would lose
+/// their state when copied as a map of their own properties.
+fn is_plain_object(object: &Object<'_>, object_prototype: Option<&Object<'_>>) -> bool {
+    match object.get_prototype() {
+        Some(prototype) => object_prototype.is_some_and(|p| p.as_value() == prototype.as_value()),
+        None => true,
+    }
+}
+
+/// Writes the value and copies plain objects and arrays recursively (see `Encoded::materialized`)
+fn write_materialized<'js>(
+    out: &mut Vec<u8>,
+    value: Value<'js>,
+    object_prototype: Option<&Object<'js>>,
+    parents: &mut Vec<Value<'js>>,
+) -> rquickjs::Result<()> {
+    match value.type_of() {
+        Type::Array => {}
+        Type::Object if is_plain_object(value.as_object().unwrap(), object_prototype) => {}
+        // Handles to all other objects
+        _ => return write_value(out, value),
+    }
+
+    let ctx = value.ctx().clone();
+    if parents.iter().any(|parent| parent == &value) {
+        return Err(Exception::throw_type(&ctx, "Cyclic value can not be materialized"));
+    }
+    if parents.len() >= MAX_MATERIALIZE_DEPTH {
+        return Err(Exception::throw_type(
+            &ctx,
+            "Value is nested too deep to be materialized",
+        ));
+    }
+
+    parents.push(value.clone());
+    if let Some(array) = value.as_array() {
+        write_tag(out, tag::ARRAY);
+        encoded(rmp::encode::write_array_len(out, array.len() as u32));
+        for item in array.iter::<Value>() {
+            write_materialized(out, item?, object_prototype, parents)?;
+        }
+    } else {
+        let object = value.as_object().unwrap();
+        // Collect the keys first, the length of the map must be known before writing its entries
+        let keys = object.keys::<Atom>().collect::<rquickjs::Result<Vec<_>>>()?;
+        write_tag(out, tag::OBJECT);
+        encoded(rmp::encode::write_map_len(out, keys.len() as u32));
+        for key in keys {
+            encoded(rmp::encode::write_str(out, &key.to_string()?));
+            write_materialized(out, object.get(key)?, object_prototype, parents)?;
+        }
+    }
+    parents.pop();
+    Ok(())
+}
+
+/// Helper function to convert a MsgPack decode error into a rquickjs error
+fn decode_error(err: impl Display) -> rquickjs::Error {
+    rquickjs::Error::new_from_js_message("msgpack", "value", err.to_string())
+}
+
+/// Helper function to read a string without copying it
+fn read_str<'a>(input: &mut &'a [u8]) -> rquickjs::Result<&'a str> {
+    let (string, rest) = rmp::decode::read_str_from_slice(*input).map_err(decode_error)?;
+    *input = rest;
+    Ok(string)
+}
+
+/// Helper function to read a binary without copying it
+fn read_bin<'a>(input: &mut &'a [u8]) -> rquickjs::Result<&'a [u8]> {
+    let len = rmp::decode::read_bin_len(input).map_err(decode_error)? as usize;
+    if input.len() < len {
+        return Err(decode_error("Unexpected end of binary"));
+    }
+    let (bytes, rest) = input.split_at(len);
+    *input = rest;
+    Ok(bytes)
+}
+
+/// Helper function to read the header of a payload with two fields
+fn read_pair(input: &mut &[u8]) -> rquickjs::Result<()> {
+    match rmp::decode::read_array_len(input).map_err(decode_error)? {
+        2 => Ok(()),
+        len => Err(decode_error(format!("Expected 2 fields, got {}", len))),
+    }
+}
+
+fn read_i32(input: &mut &[u8]) -> rquickjs::Result<i32> {
+    rmp::decode::read_int(input).map_err(decode_error)
+}
+
+fn read_u64(input: &mut &[u8]) -> rquickjs::Result<u64> {
+    rmp::decode::read_int(input).map_err(decode_error)
+}
+
+/// Reads the tag of a (non-unit) variant in either format from the start of the input and advances the input past
+/// it. Returns None (and leaves the input untouched) for unit variants and unknown tags.
+fn read_tag(input: &mut &[u8]) -> rquickjs::Result<Option<u8>> {
+    let start = *input;
+    match input.first().map(|&byte| Marker::from_u8(byte)) {
+        Some(Marker::FixPos(tag)) if tag != tag::NULL && tag != tag::UNDEFINED => {
+            *input = &input[1..];
+            Ok(Some(tag))
+        }
+        Some(Marker::FixMap(1)) => {
+            *input = &input[1..];
+            let name = read_str(input)?;
+            match TAG_NAMES.iter().position(|candidate| *candidate == name) {
+                Some(tag) => Ok(Some(tag as u8)),
+                None => {
+                    *input = start;
+                    Ok(None)
+                }
+            }
+        }
+        _ => Ok(None),
+    }
+}
+
+/// Reads a single `JSJavaProxy` (in either format) from the start of the input and advances the input
+pub(crate) fn read_proxy(input: &mut &[u8]) -> rquickjs::Result<JSJavaProxy> {
+    match input.first().map(|&byte| Marker::from_u8(byte)) {
+        Some(Marker::FixPos(_)) => read_compact(input),
+        _ => rmp_serde::decode::from_read(&mut *input).map_err(decode_error),
+    }
+}
+
+/// Decodes a complete MsgPack buffer (in either format) into a `JSJavaProxy`
+pub(crate) fn from_slice(bytes: &[u8]) -> rquickjs::Result<JSJavaProxy> {
+    let mut input = bytes;
+    read_proxy(&mut input)
+}
+
+/// Reads a single `JSJavaProxy` in the compact format
+fn read_compact(input: &mut &[u8]) -> rquickjs::Result<JSJavaProxy> {
+    let tag = rmp::decode::read_pfix(input).map_err(decode_error)?;
+    let proxy = match tag {
+        tag::NULL => JSJavaProxy::Null,
+        tag::UNDEFINED => JSJavaProxy::Undefined,
+        tag::STRING => JSJavaProxy::String(read_str(input)?.to_string()),
+        tag::INT => JSJavaProxy::Int(read_i32(input)?),
+        tag::FLOAT => JSJavaProxy::Float(rmp::decode::read_f64(input).map_err(decode_error)?),
+        tag::BOOLEAN => JSJavaProxy::Boolean(rmp::decode::read_bool(input).map_err(decode_error)?),
+        tag::ARRAY => {
+            let len = rmp::decode::read_array_len(input).map_err(decode_error)?;
+            let mut values = Vec::with_capacity(len as usize);
+            for _ in 0..len {
+                values.push(read_compact(input)?);
+            }
+            JSJavaProxy::Array(values)
+        }
+        tag::OBJECT => {
+            let len = rmp::decode::read_map_len(input).map_err(decode_error)?;
+            let mut values = HashMap::with_capacity(len as usize);
+            for _ in 0..len {
+                let key = read_str(input)?.to_string();
+                values.insert(key, read_compact(input)?);
+            }
+            JSJavaProxy::Object(values)
+        }
+        tag::NATIVE_ARRAY => JSJavaProxy::NativeArray(read_u64(input)?),
+        tag::NATIVE_OBJECT => JSJavaProxy::NativeObject(read_u64(input)?),
+        tag::NATIVE_ARRAY_BUFFER => JSJavaProxy::NativeArrayBuffer(read_u64(input)?),
+        tag::FUNCTION => {
+            read_pair(input)?;
+            JSJavaProxy::Function(read_str(input)?.to_string(), read_u64(input)?)
+        }
+        tag::JAVA_FUNCTION => {
+            read_pair(input)?;
+            JSJavaProxy::JavaFunction(read_i32(input)?, read_i32(input)?)
+        }
+        tag::EXCEPTION => {
+            read_pair(input)?;
+            JSJavaProxy::Exception(read_str(input)?.to_string(), read_str(input)?.to_string())
+        }
+        tag::COMPLETABLE_FUTURE => {
+            read_pair(input)?;
+            JSJavaProxy::CompletableFuture(read_i32(input)?, read_u64(input)?)
+        }
+        tag::COMPILED_SCRIPT => {
+            read_pair(input)?;
+            JSJavaProxy::CompiledScript(read_str(input)?.to_string(), read_u64(input)?)
+        }
+        tag::BINARY => JSJavaProxy::Binary(read_bin(input)?.to_vec()),
+        tag::UINT8_ARRAY => JSJavaProxy::Uint8Array(read_bin(input)?.to_vec()),
+        tag::INT32_ARRAY => JSJavaProxy::Int32Array(read_bin(input)?.to_vec()),
+        tag::FLOAT32_ARRAY => JSJavaProxy::Float32Array(read_bin(input)?.to_vec()),
+        tag::FLOAT64_ARRAY => JSJavaProxy::Float64Array(read_bin(input)?.to_vec()),
+        tag::BIG_INT64_ARRAY => JSJavaProxy::BigInt64Array(read_bin(input)?.to_vec()),
+        tag::LATIN1_STRING => JSJavaProxy::String(latin1_to_string(read_bin(input)?)),
+        _ => return Err(decode_error(format!("Unknown type tag: {}", tag))),
+    };
+    Ok(proxy)
+}
+
+/// Reads a single value (in either format) from the start of the input and advances the input. Primitives, objects
+/// and arrays are created directly, all other values are decoded as `JSJavaProxy` first.
+pub(crate) fn read_value<'js>(ctx: &Ctx<'js>, input: &mut &[u8]) -> rquickjs::Result<Value<'js>> {
+    let start = *input;
+    match read_tag(input)? {
+        Some(tag::STRING) => {
+            let string = read_str(input)?;
+            return rquickjs::String::from_str(ctx.clone(), string).map(|s| s.into_value());
+        }
+        Some(tag::LATIN1_STRING) => {
+            let string = latin1_to_string(read_bin(input)?);
+            return rquickjs::String::from_str(ctx.clone(), &string).map(|s| s.into_value());
+        }
+        Some(tag::INT) => {
+            let number = read_i32(input)?;
+            return Ok(Value::new_int(ctx.clone(), number));
+        }
+        Some(tag::FLOAT) => {
+            let number = rmp::decode::read_f64(input).map_err(decode_error)?;
+            return Ok(Value::new_float(ctx.clone(), number));
+        }
+        Some(tag::BOOLEAN) => {
+            let boolean = rmp::decode::read_bool(input).map_err(decode_error)?;
+            return Ok(Value::new_bool(ctx.clone(), boolean));
+        }
+        Some(tag::ARRAY) => {
+            let len = rmp::decode::read_array_len(input).map_err(decode_error)?;
+            let array = Array::new(ctx.clone())?;
+            for index in 0..len as usize {
+                array.set(index, read_value(ctx, input)?)?;
+            }
+            return Ok(array.into_value());
+        }
+        Some(tag::OBJECT) => {
+            let len = rmp::decode::read_map_len(input).map_err(decode_error)?;
+            let object = Object::new(ctx.clone())?;
+            for _ in 0..len {
+                let key = read_str(input)?;
+                object.set(key, read_value(ctx, input)?)?;
+            }
+            return Ok(object.into_value());
+        }
+        _ => {}
+    }
+
+    // Everything else (null, undefined, handles, typed arrays, ...)
+    *input = start;
+    let proxy = read_proxy(input)?;
+    debug!("Decoded value {:?}", proxy);
+    proxy.into_js(ctx)
+}
+
+/// Decodes a complete MsgPack buffer into a value (see `read_value`)
+pub(crate) fn decode<'js>(ctx: &Ctx<'js>, bytes: &[u8]) -> rquickjs::Result<Value<'js>> {
+    let mut input = bytes;
+    read_value(ctx, &mut input)
+}
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::{Context, Runtime};
+
+    use super::*;
+
+    fn nested_document() -> JSJavaProxy {
+        let mut inner = HashMap::new();
+        inner.insert("c".to_string(), JSJavaProxy::Float(2.5));
+        let mut object = HashMap::new();
+        object.insert("a".to_string(), JSJavaProxy::Int(1));
+        object.insert(
+            "b".to_string(),
+            JSJavaProxy::Array(vec![
+                JSJavaProxy::Boolean(true),
+                JSJavaProxy::String("x".to_string()),
+                JSJavaProxy::Null,
+                JSJavaProxy::Undefined,
+                JSJavaProxy::Object(inner),
+            ]),
+        );
+        JSJavaProxy::Object(object)
+    }
+
+    /// In the tagged format the streaming encoder must produce exactly the bytes of the serde encoding
+    #[test]
+    fn test_encode_value() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+        negotiate_format(FORMAT_TAGGED);
+
+        context.with(|ctx| {
+            for script in ["null", "undefined", "'Hello ünicode'", "42", "-7", "1.5", "true", "'x'.repeat(1000)"] {
+                let value: Value = ctx.eval(script).unwrap();
+                let expected = rmp_serde::to_vec(&JSJavaProxy::convert(value.clone()).unwrap()).unwrap();
+                assert_eq!(Encoded::value(value).unwrap().0, expected, "{}", script);
+            }
+        });
+    }
+
+    #[test]
+    fn test_encode_materialized() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        for format in [FORMAT_TAGGED, FORMAT_COMPACT, FORMAT_LATIN1] {
+            negotiate_format(format);
+            context.with(|ctx| {
+                let value: Value = ctx.eval("({a: 1, b: [true, 'x', null, undefined, {c: 2.5}]})").unwrap();
+                let encoded = Encoded::materialized(value).unwrap();
+                assert_eq!(from_slice(&encoded.0).unwrap(), nested_document());
+
+                // Shared (but not cyclic) values are copied
+                let value: Value = ctx.eval("const s = [1]; [s, s]").unwrap();
+                assert!(Encoded::materialized(value).is_ok());
+
+                let value: Value = ctx.eval("const o = {}; o.self = o; o").unwrap();
+                assert!(Encoded::materialized(value).is_err());
+
+                // Only plain objects are copied, instances of other classes are returned as handles
+                let value: Value = ctx
+                    .eval("[Object.create(null), new Date(0), new Map(), /x/, new (class Point {})()]")
+                    .unwrap();
+                match from_slice(&Encoded::materialized(value).unwrap().0).unwrap() {
+                    JSJavaProxy::Array(values) => {
+                        assert_eq!(values[0], JSJavaProxy::Object(HashMap::new()));
+                        for value in &values[1..] {
+                            assert!(matches!(value, JSJavaProxy::NativeObject(_)));
+                        }
+                    }
+                    other => panic!("Expected an array, got {:?}", other),
+                }
+
+                let value: Value = ctx.eval("new Int32Array([1, 2])").unwrap();
+                let encoded = Encoded::materialized(value).unwrap();
+                assert_eq!(
+                    from_slice(&encoded.0).unwrap(),
+                    JSJavaProxy::Int32Array(vec![1, 0, 0, 0, 2, 0, 0, 0])
+                );
+            });
+        }
+    }
+
+    #[test]
+    fn test_decode_value() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        for format in [FORMAT_TAGGED, FORMAT_COMPACT, FORMAT_LATIN1] {
+            negotiate_format(format);
+            context.with(|ctx| {
+                let bytes = to_vec(&nested_document());
+                let value = decode(&ctx, &bytes).unwrap();
+                ctx.globals().set("value", value).unwrap();
+                let result: String = ctx
+                    .eval("JSON.stringify([value.a, value.b[0], value.b[1], value.b[2], value.b[3] === undefined, value.b[4].c])")
+                    .unwrap();
+                assert_eq!(result, "[1,true,\"x\",null,true,2.5]");
+            });
+        }
+    }
+
+    #[test]
+    fn test_compact_format() {
+        assert_eq!(negotiate_format(FORMAT_COMPACT), FORMAT_COMPACT);
+
+        let values = vec![
+            JSJavaProxy::Null,
+            JSJavaProxy::Undefined,
+            JSJavaProxy::String("ü".to_string()),
+            JSJavaProxy::Int(-1),
+            JSJavaProxy::Float(0.5),
+            JSJavaProxy::Boolean(false),
+            nested_document(),
+            JSJavaProxy::NativeArray(1 << 40),
+            JSJavaProxy::NativeObject(42),
+            JSJavaProxy::NativeArrayBuffer(43),
+            JSJavaProxy::Function("f".to_string(), 44),
+            JSJavaProxy::JavaFunction(1, 2),
+            JSJavaProxy::Exception("message".to_string(), "stack".to_string()),
+            JSJavaProxy::CompletableFuture(3, 45),
+            JSJavaProxy::CompiledScript("script.js".to_string(), 46),
+            JSJavaProxy::Binary(vec![1, 2]),
+            JSJavaProxy::Uint8Array(vec![3]),
+            JSJavaProxy::Int32Array(vec![1, 0, 0, 0]),
+            JSJavaProxy::Float32Array(vec![0, 0, 0, 0]),
+            JSJavaProxy::Float64Array(vec![0; 8]),
+            JSJavaProxy::BigInt64Array(vec![0; 8]),
+        ];
+        for value in values {
+            let compact = to_vec(&value);
+            let tagged = rmp_serde::to_vec(&value).unwrap();
+            assert!(compact.len() <= tagged.len(), "{:?}", value);
+            assert_eq!(from_slice(&compact).unwrap(), value);
+            // Both formats are always accepted
+            assert_eq!(from_slice(&tagged).unwrap(), value);
+        }
+
+        // The single byte tag saves the map header and the variant name
+        assert_eq!(to_vec(&JSJavaProxy::NativeObject(42)), vec![tag::NATIVE_OBJECT, 42]);
+        assert_eq!(rmp_serde::to_vec(&JSJavaProxy::NativeObject(42)).unwrap().len(), 15);
+    }
+
+    #[test]
+    fn test_latin1_strings() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+        assert_eq!(negotiate_format(7), FORMAT_LATIN1);
+
+        context.with(|ctx| {
+            let value: Value = ctx.eval("'café'").unwrap();
+            let encoded = Encoded::value(value).unwrap();
+            assert_eq!(encoded.0, vec![tag::LATIN1_STRING, 0xc4, 4, b'c', b'a', b'f', 0xe9]);
+            assert_eq!(from_slice(&encoded.0).unwrap(), JSJavaProxy::String("café".to_string()));
+            ctx.globals().set("value", decode(&ctx, &encoded.0).unwrap()).unwrap();
+            let result: bool = ctx.eval("value === 'café'").unwrap();
+            assert!(result);
+
+            // ASCII and strings with characters beyond Latin-1 are transferred as UTF-8
+            let value: Value = ctx.eval("'id-4711'").unwrap();
+            assert_eq!(Encoded::value(value).unwrap().0[0], tag::STRING);
+            let value: Value = ctx.eval("'5 €'").unwrap();
+            let encoded = Encoded::value(value).unwrap();
+            assert_eq!(encoded.0[0], tag::STRING);
+            assert_eq!(from_slice(&encoded.0).unwrap(), JSJavaProxy::String("5 €".to_string()));
+        });
+    }
+}
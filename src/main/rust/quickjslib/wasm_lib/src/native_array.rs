@@ -2,6 +2,8 @@ use rquickjs::{prelude::This, Array, Context, Ctx, Function, Persistent};
 use wasm_macros::wasm_export;
 
 use crate::js_to_java_proxy::JSJavaProxy;
+use crate::msgpack;
+use crate::msgpack::Encoded;
 
 #[wasm_export]
 pub fn array_create(ctx: &Ctx<'_>) -> rquickjs::Result<Option<Box<Persistent<Array<'static>>>>> {
@@ -43,11 +45,11 @@ pub fn array_set(
     ctx: &Ctx<'_>,
     persistent_array: &Persistent<Array<'static>>,
     index: i32,
-    value: JSJavaProxy,
+    value: &[u8],
 ) -> rquickjs::Result<bool> {
     let array = persistent_array.clone().restore(ctx)?;
 
-    array.set(index as usize, value)?;
+    array.set(index as usize, msgpack::decode(ctx, value)?)?;
     Ok(true)
 }
 
@@ -56,10 +58,10 @@ pub fn array_get(
     ctx: &Ctx<'_>,
     persistent_array: &Persistent<Array<'static>>,
     index: i32,
-) -> rquickjs::Result<JSJavaProxy> {
+) -> rquickjs::Result<Encoded> {
     let array = persistent_array.clone().restore(ctx)?;
 
-    array.get(index as usize)?
+    Encoded::value(array.get(index as usize)?)
 }
 
 #[wasm_export]
@@ -75,6 +77,83 @@ pub fn array_remove(
     Ok(true)
 }
 
+/// Returns the elements of the array from index `from` (inclusive) to index `to` (exclusive) with a single call
+#[wasm_export]
+pub fn array_get_range(
+    ctx: &Ctx<'_>,
+    persistent_array: &Persistent<Array<'static>>,
+    from: i32,
+    to: i32,
+) -> rquickjs::Result<JSJavaProxy> {
+    let array = persistent_array.clone().restore(ctx)?;
+    let from = from.max(0) as usize;
+    let to = (to.max(0) as usize).min(array.len());
+
+    let mut values = Vec::with_capacity(to.saturating_sub(from));
+    for i in from..to {
+        values.push(array.get(i)?);
+    }
+    Ok(JSJavaProxy::Array(values))
+}
+
+/// Replaces the elements of the array starting at `index` with the given values
+#[wasm_export]
+pub fn array_set_range(
+    ctx: &Ctx<'_>,
+    persistent_array: &Persistent<Array<'static>>,
+    index: i32,
+    values: JSJavaProxy,
+) -> rquickjs::Result<bool> {
+    let array = persistent_array.clone().restore(ctx)?;
+    set_range(&array, index, values)?;
+    Ok(true)
+}
+
+/// Inserts the given values into the array at `index`
+#[wasm_export]
+pub fn array_add_all(
+    ctx: &Ctx<'_>,
+    persistent_array: &Persistent<Array<'static>>,
+    index: i32,
+    values: JSJavaProxy,
+) -> rquickjs::Result<bool> {
+    let array = persistent_array.clone().restore(ctx)?;
+    if index as usize >= array.len() {
+        // Appending requires no shifting of existing elements
+        set_range(&array, index, values)?;
+    } else {
+        // The values are passed as individual arguments to splice
+        splice_array(array, index, 0, Some(values))?;
+    }
+    Ok(true)
+}
+
+/// Removes the elements of the array from index `from` (inclusive) to index `to` (exclusive)
+#[wasm_export]
+pub fn array_remove_range(
+    ctx: &Ctx<'_>,
+    persistent_array: &Persistent<Array<'static>>,
+    from: i32,
+    to: i32,
+) -> rquickjs::Result<bool> {
+    let array = persistent_array.clone().restore(ctx)?;
+    splice_array(array, from, to - from, None)?;
+    Ok(true)
+}
+
+/// Helper function to set the given values (must be an `JSJavaProxy::Array`) starting at `index`
+fn set_range(array: &Array<'_>, index: i32, values: JSJavaProxy) -> rquickjs::Result<()> {
+    match values {
+        JSJavaProxy::Array(values) => {
+            for (i, value) in values.into_iter().enumerate() {
+                array.set(index as usize + i, value)?;
+            }
+            Ok(())
+        }
+        _ => Err(rquickjs::Error::new_from_js("value", "array")),
+    }
+}
+
 /// Helper function to splice an array, by calling the splice method on the array.
 ///
 /// # Arguments
@@ -87,7 +166,7 @@ pub fn array_remove(
 /// # Returns
 ///
 /// `Ok(())` if the array was spliced successfully, `Err(e)` if the array was not spliced successfully
-fn splice_array<'js>(
+pub(crate) fn splice_array<'js>(
     array: Array<'js>,
     index: i32,
     delete_count: i32,
@@ -105,3 +184,32 @@ fn splice_array<'js>(
     };
     Ok(())
 }
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::Runtime;
+
+    use super::*;
+
+    #[test]
+    fn test_array_ranges() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let array: Array = ctx.eval("[1, 2, 3]").unwrap();
+            let persistent = Persistent::save(&ctx, array);
+
+            let ints = |values: &[i32]| JSJavaProxy::Array(values.iter().map(|v| JSJavaProxy::Int(*v)).collect());
+
+            array_add_all(&ctx, &persistent, 1, ints(&[7, 8])).unwrap();
+            array_add_all(&ctx, &persistent, 5, ints(&[9])).unwrap();
+            assert_eq!(array_get_range(&ctx, &persistent, 0, 100).unwrap(), ints(&[1, 7, 8, 2, 3, 9]));
+
+            array_set_range(&ctx, &persistent, 4, ints(&[4, 5])).unwrap();
+            array_remove_range(&ctx, &persistent, 1, 3).unwrap();
+            assert_eq!(array_get_range(&ctx, &persistent, 0, 100).unwrap(), ints(&[1, 2, 4, 5]));
+            assert_eq!(array_get_range(&ctx, &persistent, 1, 3).unwrap(), ints(&[2, 4]));
+        });
+    }
+}
@@ -1,8 +1,10 @@
 use log::debug;
-use rquickjs::{object::ObjectKeysIter, Context, Ctx, IntoAtom, Object, Persistent};
+use rquickjs::{object::ObjectKeysIter, Array, Atom, Context, Ctx, FromAtom, IntoAtom, Object, Persistent, Value};
 use wasm_macros::wasm_export;
 
 use crate::js_to_java_proxy::JSJavaProxy;
+use crate::msgpack;
+use crate::msgpack::Encoded;
 
 #[wasm_export]
 pub fn object_create(ctx: &Ctx<'_>) -> rquickjs::Result<Option<Box<Persistent<Object<'static>>>>> {
@@ -42,15 +44,15 @@ pub fn object_get_value(
     ctx: &Ctx<'_>,
     persistent_object: &Persistent<Object<'static>>,
     key: JSJavaProxy,
-) -> rquickjs::Result<JSJavaProxy> {
+) -> rquickjs::Result<Encoded> {
     let object = persistent_object.clone().restore(ctx)?;
     let key = key.into_atom(ctx)?;
     if object.contains_key(key.clone())? {
         debug!("Key {:?} exists in object", key.to_string()?);
-        object.get(key.clone())?
+        Encoded::value(object.get(key)?)
     } else {
         debug!("Key {:?} does not exist in object", key.to_string()?);
-        Ok(JSJavaProxy::Null)
+        Encoded::value(rquickjs::Value::new_null(ctx.clone()))
     }
 }
 
@@ -70,13 +72,58 @@ pub fn object_set_value(
     ctx: &Ctx<'_>,
     persistent_object: &Persistent<Object<'static>>,
     key: JSJavaProxy,
-    value: JSJavaProxy,
+    value: &[u8],
 ) -> rquickjs::Result<bool> {
     let v = persistent_object.clone().restore(ctx)?;
-    v.set(key, value)?;
+    v.set(key, msgpack::decode(ctx, value)?)?;
     Ok(true)
 }
 
+/// Sets the value of the key and returns the previous value (`Null` if the key did not exist). The previous value is
+/// only fetched if `return_previous` is not 0, otherwise `Null` is returned.
+#[wasm_export]
+pub fn object_swap_value(
+    ctx: &Ctx<'_>,
+    persistent_object: &Persistent<Object<'static>>,
+    key: JSJavaProxy,
+    value: &[u8],
+    return_previous: i32,
+) -> rquickjs::Result<JSJavaProxy> {
+    let object = persistent_object.clone().restore(ctx)?;
+    let key = key.into_atom(ctx)?;
+    let value = msgpack::decode(ctx, value)?;
+    let previous = if return_previous != 0 {
+        previous_value(&object, &key)?
+    } else {
+        JSJavaProxy::Null
+    };
+    object.set(key, value)?;
+    Ok(previous)
+}
+
+/// Removes the key and returns its previous value (`Null` if the key did not exist)
+#[wasm_export]
+pub fn object_take_value(
+    ctx: &Ctx<'_>,
+    persistent_object: &Persistent<Object<'static>>,
+    key: JSJavaProxy,
+) -> rquickjs::Result<JSJavaProxy> {
+    let object = persistent_object.clone().restore(ctx)?;
+    let key = key.into_atom(ctx)?;
+    let previous = previous_value(&object, &key)?;
+    object.remove(key)?;
+    Ok(previous)
+}
+
+/// Helper function returning the value of the key, `Null` if the key does not exist
+fn previous_value(object: &Object<'_>, key: &Atom<'_>) -> rquickjs::Result<JSJavaProxy> {
+    if object.contains_key(key.clone())? {
+        object.get(key.clone())
+    } else {
+        Ok(JSJavaProxy::Null)
+    }
+}
+
 #[wasm_export]
 pub fn object_key_set(
     ctx: &Ctx<'_>,
@@ -93,3 +140,141 @@ pub fn object_key_set(
     debug!("Keys: {:?}", keys);
     Ok(JSJavaProxy::Array(keys))
 }
+
+/// Returns all entries of the object as flat array of alternating keys and values, in the order of `object_key_set`.
+/// This way all entries are transferred with a single call. Large objects can be fetched in pages with
+/// `object_entries_keys` and `object_entries_page` instead.
+#[wasm_export]
+pub fn object_entries(
+    ctx: &Ctx<'_>,
+    persistent_object: &Persistent<Object<'static>>,
+) -> rquickjs::Result<JSJavaProxy> {
+    let object = persistent_object.clone().restore(ctx)?;
+
+    let mut entries = Vec::new();
+    for key in object.keys::<Atom>() {
+        push_entry(&object, key?, &mut entries)?;
+    }
+    debug!("Fetched {} entries", entries.len() / 2);
+    Ok(JSJavaProxy::Array(entries))
+}
+
+/// Captures the keys of the object (in the order of `object_key_set`) as a native array, to page through the
+/// entries with `object_entries_page`. The keys are enumerated only once, so every page costs only its own size.
+/// The array is closed with `array_close`.
+#[wasm_export]
+pub fn object_entries_keys(
+    ctx: &Ctx<'_>,
+    persistent_object: &Persistent<Object<'static>>,
+) -> rquickjs::Result<Option<Box<Persistent<Array<'static>>>>> {
+    let object = persistent_object.clone().restore(ctx)?;
+
+    let keys = Array::new(ctx.clone())?;
+    for (index, key) in object.keys::<Atom>().enumerate() {
+        keys.set(index, key?.to_value()?)?;
+    }
+    debug!("Captured {} keys", keys.len());
+    Ok(Some(Box::new(Persistent::save(ctx, keys))))
+}
+
+/// Returns the entries of the object for `limit` keys starting at index `offset` of the keys captured by
+/// `object_entries_keys`, as flat array of alternating keys and values. Keys removed in the meantime are skipped, so
+/// a page might contain fewer entries.
+#[wasm_export]
+pub fn object_entries_page(
+    ctx: &Ctx<'_>,
+    persistent_object: &Persistent<Object<'static>>,
+    persistent_keys: &Persistent<Array<'static>>,
+    offset: i32,
+    limit: i32,
+) -> rquickjs::Result<JSJavaProxy> {
+    let object = persistent_object.clone().restore(ctx)?;
+    let keys = persistent_keys.clone().restore(ctx)?;
+    let start = (offset.max(0) as usize).min(keys.len());
+    let end = start.saturating_add(limit.max(0) as usize).min(keys.len());
+
+    let mut entries = Vec::with_capacity((end - start) * 2);
+    for index in start..end {
+        let key = Atom::from_value(ctx.clone(), &keys.get::<Value>(index)?)?;
+        if object.contains_key(key.clone())? {
+            push_entry(&object, key, &mut entries)?;
+        }
+    }
+    debug!("Fetched {} entries", entries.len() / 2);
+    Ok(JSJavaProxy::Array(entries))
+}
+
+/// Appends key and value of the entry to the flat array of entries
+fn push_entry<'js>(object: &Object<'js>, key: Atom<'js>, entries: &mut Vec<JSJavaProxy>) -> rquickjs::Result<()> {
+    let value: JSJavaProxy = object.get(key.clone())?;
+    entries.push(JSJavaProxy::from_atom(key)?);
+    entries.push(value);
+    Ok(())
+}
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::Runtime;
+
+    use super::*;
+
+    #[test]
+    fn test_object_entries() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let object: Object = ctx.eval("({a: 1, b: 'x', c: true})").unwrap();
+            let persistent = Persistent::save(&ctx, object);
+
+            let entries = object_entries(&ctx, &persistent).unwrap();
+            assert_eq!(
+                entries,
+                JSJavaProxy::Array(vec![
+                    JSJavaProxy::String("a".to_string()),
+                    JSJavaProxy::Int(1),
+                    JSJavaProxy::String("b".to_string()),
+                    JSJavaProxy::String("x".to_string()),
+                    JSJavaProxy::String("c".to_string()),
+                    JSJavaProxy::Boolean(true),
+                ])
+            );
+
+            let keys = object_entries_keys(&ctx, &persistent).unwrap().unwrap();
+            let page = object_entries_page(&ctx, &persistent, &keys, 2, 2).unwrap();
+            assert_eq!(
+                page,
+                JSJavaProxy::Array(vec![
+                    JSJavaProxy::String("c".to_string()),
+                    JSJavaProxy::Boolean(true),
+                ])
+            );
+            // Keys removed after capturing them are skipped
+            ctx.globals().set("object", persistent.clone().restore(&ctx).unwrap()).unwrap();
+            ctx.eval::<(), _>("delete object.a").unwrap();
+            let page = object_entries_page(&ctx, &persistent, &keys, 0, 2).unwrap();
+            assert_eq!(
+                page,
+                JSJavaProxy::Array(vec![
+                    JSJavaProxy::String("b".to_string()),
+                    JSJavaProxy::String("x".to_string()),
+                ])
+            );
+            ctx.eval::<(), _>("object.a = 1").unwrap();
+
+            let previous = object_swap_value(
+                &ctx,
+                &persistent,
+                JSJavaProxy::String("a".to_string()),
+                &rmp_serde::to_vec(&JSJavaProxy::Int(2)).unwrap(),
+                1,
+            )
+            .unwrap();
+            assert_eq!(previous, JSJavaProxy::Int(1));
+            let previous = object_take_value(&ctx, &persistent, JSJavaProxy::String("a".to_string())).unwrap();
+            assert_eq!(previous, JSJavaProxy::Int(2));
+            let previous = object_take_value(&ctx, &persistent, JSJavaProxy::String("a".to_string())).unwrap();
+            assert_eq!(previous, JSJavaProxy::Null);
+        });
+    }
+}
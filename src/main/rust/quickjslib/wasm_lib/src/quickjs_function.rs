@@ -52,7 +52,7 @@ impl JavaFunction {
             );
 
             // Serialize args
-            let args = rmp_serde::to_vec(&arg).expect("MsgPack encode failed");
+            let args = crate::msgpack::to_vec(&arg);
             let args_len = args.len();
             let args_ptr = args.as_ptr();
             std::mem::forget(args); // Prevent drop
@@ -65,7 +65,7 @@ impl JavaFunction {
             let result_len = (result & 0xFFFFFFFF) as usize;
             let result_bytes =
                 unsafe { std::slice::from_raw_parts(result_ptr as *const u8, result_len) };
-            let result: JSJavaProxy = match rmp_serde::from_slice(result_bytes) {
+            let result: JSJavaProxy = match crate::msgpack::from_slice(result_bytes) {
                 Ok(result) => result,
                 Err(e) => {
                     error!(
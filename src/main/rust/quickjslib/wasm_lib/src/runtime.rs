@@ -29,6 +29,13 @@ pub fn close_runtime(runtime: Box<Runtime>) {
     drop(runtime);
 }
 
+/// Negotiates the wire format of all values transferred between java and the native library (see `msgpack`). Returns
+/// the format actually used, which might be older than the requested one.
+#[wasm_export]
+pub fn set_wire_format_runtime(_runtime: &Runtime, requested: i32) -> i32 {
+    crate::msgpack::negotiate_format(requested)
+}
+
 #[wasm_export]
 pub fn set_memory_limit_runtime(runtime: &Runtime, limit: u64) {
     debug!("Setting QuickJSRuntime memory limit to {} bytes", limit);
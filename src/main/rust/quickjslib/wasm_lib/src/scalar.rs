@@ -0,0 +1,290 @@
+use std::cell::RefCell;
+use std::sync::atomic::AtomicU64;
+use std::sync::atomic::Ordering;
+
+use log::debug;
+use log::error;
+use rquickjs::function::Args;
+use rquickjs::Ctx;
+use rquickjs::Function;
+use rquickjs::IntoJs;
+use rquickjs::Persistent;
+use rquickjs::Value;
+use wasm_macros::wasm_export;
+
+use crate::from_error::FromError;
+use crate::into_wasm_result::IntoWasmResult;
+use crate::js_to_java_proxy::JSJavaProxy;
+
+/// The scalar result is available in the result slot
+pub(crate) const STATUS_OK: u64 = 0;
+/// The call threw an exception, which can be fetched with `take_last_exception`
+pub(crate) const STATUS_EXCEPTION: u64 = 1;
+/// The result has not the requested type
+pub(crate) const STATUS_TYPE_MISMATCH: u64 = 2;
+/// The result is null or undefined
+pub(crate) const STATUS_NULL: u64 = 3;
+
+/// Maximum number of arguments of typed function calls (see `call_function_double`)
+pub(crate) const MAX_SCALAR_ARGS: usize = 16;
+
+/// Argument area of typed function calls: one 64 bit slot per argument (f64 by bit representation, i32 sign
+/// extended). The host writes the arguments directly into the linear memory, without any allocation.
+static SCALAR_ARGS: [AtomicU64; MAX_SCALAR_ARGS] = [const { AtomicU64::new(0) }; MAX_SCALAR_ARGS];
+
+/// Slot receiving the result of scalar calls. Its address is fixed, so the host reads the result directly from the
+/// linear memory without any allocation.
+static SCALAR_RESULT: AtomicU64 = AtomicU64::new(0);
+
+thread_local! {
+    /// Exception thrown by the last scalar call
+    static LAST_EXCEPTION: RefCell<Option<JSJavaProxy>> = const { RefCell::new(None) };
+}
+
+/// Status of a scalar call. The value itself is written to the result slot.
+pub struct ScalarStatus(pub u64);
+
+impl ScalarStatus {
+    /// Writes the value to the result slot and returns the status for it
+    fn ok(value: u64) -> Self {
+        SCALAR_RESULT.store(value, Ordering::Relaxed);
+        ScalarStatus(STATUS_OK)
+    }
+}
+
+impl IntoWasmResult for ScalarStatus {
+    #[inline]
+    fn into_wasm(self) -> u64 {
+        self.0
+    }
+}
+
+/// Keeps the exception for `take_last_exception`, instead of encoding it as the result
+impl<'js> FromError<'js> for ScalarStatus {
+    fn from_err(ctx: &Ctx<'js>, err: rquickjs::Error) -> Self {
+        let exception = JSJavaProxy::from_err(ctx, err);
+        LAST_EXCEPTION.with(|last| *last.borrow_mut() = Some(exception));
+        ScalarStatus(STATUS_EXCEPTION)
+    }
+}
+
+/// Converts a value to an i32 result. Floats are accepted if they are integral and within the range of an i32.
+pub(crate) fn int_result(value: &Value<'_>) -> ScalarStatus {
+    if let Some(i) = value.as_int() {
+        return ScalarStatus::ok(i as i64 as u64);
+    }
+    if let Some(f) = value.as_float() {
+        if f.fract() == 0.0 && f >= i32::MIN as f64 && f <= i32::MAX as f64 {
+            return ScalarStatus::ok(f as i32 as i64 as u64);
+        }
+    }
+    ScalarStatus(STATUS_TYPE_MISMATCH)
+}
+
+/// Converts a value to a f64 result (by bit representation)
+pub(crate) fn double_result(value: &Value<'_>) -> ScalarStatus {
+    if let Some(i) = value.as_int() {
+        return ScalarStatus::ok((i as f64).to_bits());
+    }
+    if let Some(f) = value.as_float() {
+        return ScalarStatus::ok(f.to_bits());
+    }
+    ScalarStatus(STATUS_TYPE_MISMATCH)
+}
+
+/// Converts a value to a boolean result (1 for true, 0 for false)
+pub(crate) fn boolean_result(value: &Value<'_>) -> ScalarStatus {
+    match value.as_bool() {
+        Some(b) => ScalarStatus::ok(b as u64),
+        None => ScalarStatus(STATUS_TYPE_MISMATCH),
+    }
+}
+
+/// Converts a value to a string result. The UTF-8 bytes are handed over to the host (pointer and length packed
+/// into the result slot), which must deallocate them.
+pub(crate) fn string_result(value: &Value<'_>) -> rquickjs::Result<ScalarStatus> {
+    if value.is_null() || value.is_undefined() {
+        return Ok(ScalarStatus(STATUS_NULL));
+    }
+    match value.as_string() {
+        Some(s) => {
+            let mut s = s.to_string()?;
+            // The host deallocates with the length of the string
+            s.shrink_to_fit();
+            Ok(ScalarStatus::ok(s.into_wasm()))
+        }
+        None => Ok(ScalarStatus(STATUS_TYPE_MISMATCH)),
+    }
+}
+
+#[wasm_export]
+pub fn eval_int(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<ScalarStatus> {
+    debug!("Evaluating script (int result): {}", script);
+    let value: Value = ctx.eval(script)?;
+    Ok(int_result(&value))
+}
+
+#[wasm_export]
+pub fn eval_double(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<ScalarStatus> {
+    debug!("Evaluating script (double result): {}", script);
+    let value: Value = ctx.eval(script)?;
+    Ok(double_result(&value))
+}
+
+#[wasm_export]
+pub fn eval_boolean(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<ScalarStatus> {
+    debug!("Evaluating script (boolean result): {}", script);
+    let value: Value = ctx.eval(script)?;
+    Ok(boolean_result(&value))
+}
+
+#[wasm_export]
+pub fn eval_string(ctx: &Ctx<'_>, script: String) -> rquickjs::Result<ScalarStatus> {
+    debug!("Evaluating script (string result): {}", script);
+    let value: Value = ctx.eval(script)?;
+    string_result(&value)
+}
+
+/// Reads the given number of arguments from the argument area
+fn scalar_args(argc: u32) -> rquickjs::Result<impl Iterator<Item = u64>> {
+    let argc = argc as usize;
+    if argc > MAX_SCALAR_ARGS {
+        error!("Too many arguments for a typed function call: {}", argc);
+        return Err(rquickjs::Error::Exception);
+    }
+    Ok(SCALAR_ARGS[..argc].iter().map(|arg| arg.load(Ordering::Relaxed)))
+}
+
+/// Calls a function with the given number of arguments from the argument area, each converted with `convert`. The
+/// arguments are pushed directly into the argument list of the call, without collecting them into a `Vec` first.
+fn call_with_scalar_args<'js, T: IntoJs<'js>>(
+    ctx: &Ctx<'js>,
+    function: &Function<'js>,
+    argc: u32,
+    convert: impl Fn(u64) -> T,
+) -> rquickjs::Result<Value<'js>> {
+    let values = scalar_args(argc)?;
+    let mut args = Args::new(ctx.clone(), argc as usize);
+    for value in values {
+        args.push_arg(convert(value))?;
+    }
+    function.call_arg(args)
+}
+
+/// Calls a function with numbers (f64) from the argument area and returns a number
+#[wasm_export]
+pub fn call_function_double(
+    ctx: &Ctx<'_>,
+    persistent_function: &Persistent<Function<'static>>,
+    argc: u32,
+) -> rquickjs::Result<ScalarStatus> {
+    let function = persistent_function.clone().restore(ctx)?;
+    let value = call_with_scalar_args(ctx, &function, argc, f64::from_bits)?;
+    Ok(double_result(&value))
+}
+
+/// Calls a function with ints (i32) from the argument area and returns an int
+#[wasm_export]
+pub fn call_function_int(
+    ctx: &Ctx<'_>,
+    persistent_function: &Persistent<Function<'static>>,
+    argc: u32,
+) -> rquickjs::Result<ScalarStatus> {
+    let function = persistent_function.clone().restore(ctx)?;
+    let value = call_with_scalar_args(ctx, &function, argc, |arg| arg as i64 as i32)?;
+    Ok(int_result(&value))
+}
+
+/// Returns the address of the argument area of typed function calls
+#[wasm_export]
+pub fn scalar_args_ptr() -> u64 {
+    SCALAR_ARGS.as_ptr() as u64
+}
+
+/// Returns the address of the result slot of scalar calls
+#[wasm_export]
+pub fn scalar_result_ptr() -> u64 {
+    SCALAR_RESULT.as_ptr() as u64
+}
+
+/// Returns (and clears) the exception thrown by the last scalar call, null if there was none
+#[wasm_export]
+pub fn take_last_exception() -> JSJavaProxy {
+    LAST_EXCEPTION
+        .with(|last| last.borrow_mut().take())
+        .unwrap_or(JSJavaProxy::Null)
+}
+
+#[cfg(test)]
+mod tests {
+    use std::sync::Mutex;
+    use std::sync::MutexGuard;
+
+    use rquickjs::{Context, Runtime};
+
+    use super::*;
+
+    /// The argument area and the result slot are process wide, but tests run on parallel threads. Every test using
+    /// them holds this lock.
+    static SCALAR_SLOTS: Mutex<()> = Mutex::new(());
+
+    fn lock_slots() -> MutexGuard<'static, ()> {
+        // A failed test must not fail all following ones
+        SCALAR_SLOTS.lock().unwrap_or_else(|e| e.into_inner())
+    }
+
+    fn result() -> u64 {
+        SCALAR_RESULT.load(Ordering::Relaxed)
+    }
+
+    #[test]
+    fn test_scalar_results() {
+        let _slots = lock_slots();
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let value: Value = ctx.eval("40 + 2").unwrap();
+            assert_eq!(int_result(&value).0, STATUS_OK);
+            assert_eq!(result() as i32, 42);
+            assert_eq!(double_result(&value).0, STATUS_OK);
+            assert_eq!(f64::from_bits(result()), 42.0);
+            assert_eq!(boolean_result(&value).0, STATUS_TYPE_MISMATCH);
+
+            let value: Value = ctx.eval("-4.0").unwrap();
+            assert_eq!(int_result(&value).0, STATUS_OK);
+            assert_eq!(result() as i32, -4);
+
+            let value: Value = ctx.eval("0.5").unwrap();
+            assert_eq!(int_result(&value).0, STATUS_TYPE_MISMATCH);
+
+            let value: Value = ctx.eval("1 < 2").unwrap();
+            assert_eq!(boolean_result(&value).0, STATUS_OK);
+            assert_eq!(result(), 1);
+
+            let value: Value = ctx.eval("undefined").unwrap();
+            assert_eq!(string_result(&value).unwrap().0, STATUS_NULL);
+        });
+    }
+
+    #[test]
+    fn test_scalar_args() {
+        let _slots = lock_slots();
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let function: Function = ctx.eval("(a, b, c) => a * b + c").unwrap();
+            SCALAR_ARGS[0].store(2.5f64.to_bits(), Ordering::Relaxed);
+            SCALAR_ARGS[1].store(4.0f64.to_bits(), Ordering::Relaxed);
+            SCALAR_ARGS[2].store(0.5f64.to_bits(), Ordering::Relaxed);
+
+            let value = call_with_scalar_args(&ctx, &function, 3, f64::from_bits).unwrap();
+            assert_eq!(double_result(&value).0, STATUS_OK);
+            assert_eq!(f64::from_bits(result()), 10.5);
+
+            assert!(scalar_args(MAX_SCALAR_ARGS as u32 + 1).is_err());
+            assert!(call_with_scalar_args(&ctx, &function, MAX_SCALAR_ARGS as u32 + 1, f64::from_bits).is_err());
+        });
+    }
+}
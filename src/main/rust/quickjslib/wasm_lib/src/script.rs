@@ -0,0 +1,209 @@
+use std::ffi::CString;
+
+use log::debug;
+use log::error;
+use rquickjs::qjs;
+use rquickjs::Context;
+use rquickjs::Ctx;
+use rquickjs::Persistent;
+use rquickjs::Value;
+use wasm_macros::wasm_export;
+
+use crate::js_to_java_proxy::JSJavaProxy;
+use crate::msgpack::Encoded;
+
+/// Compiles a script to QuickJS bytecode without running it. The result is the compiled (but not yet executed)
+/// function object of the script. It is bound to the realm of the given context.
+pub(crate) fn compile<'js>(ctx: &Ctx<'js>, name: &str, script: String) -> rquickjs::Result<Value<'js>> {
+    // JS_Eval requires a null terminated input
+    let mut source = script.into_bytes();
+    let len = source.len();
+    source.push(0);
+    let file_name = CString::new(name.replace('\0', "")).unwrap();
+
+    // Same flags as used by Ctx::eval (strict global script), so compiled scripts behave like evaluated ones
+    let flags = (qjs::JS_EVAL_TYPE_GLOBAL | qjs::JS_EVAL_FLAG_STRICT | qjs::JS_EVAL_FLAG_COMPILE_ONLY) as i32;
+    let compiled = unsafe {
+        qjs::JS_Eval(
+            ctx.as_raw().as_ptr(),
+            source.as_ptr() as *const _,
+            len as _,
+            file_name.as_ptr(),
+            flags,
+        )
+    };
+    if unsafe { qjs::JS_IsException(compiled) } {
+        return Err(rquickjs::Error::Exception);
+    }
+    Ok(unsafe { Value::from_raw(ctx.clone(), compiled) })
+}
+
+/// Runs a compiled script (see `compile`) in the given context and returns the value of the script.
+pub(crate) fn run<'js>(ctx: &Ctx<'js>, compiled: &Value<'js>) -> rquickjs::Result<Value<'js>> {
+    // JS_EvalFunction consumes the function object, so pass a new reference to keep the compiled script
+    let function = compiled.clone().into_raw();
+    let result = unsafe { qjs::JS_EvalFunction(ctx.as_raw().as_ptr(), function) };
+    if unsafe { qjs::JS_IsException(result) } {
+        return Err(rquickjs::Error::Exception);
+    }
+    Ok(unsafe { Value::from_raw(ctx.clone(), result) })
+}
+
+/// Serializes a compiled script (see `compile`) to QuickJS bytecode
+pub(crate) fn write_bytecode<'js>(ctx: &Ctx<'js>, compiled: &Value<'js>) -> rquickjs::Result<Vec<u8>> {
+    let mut len: usize = 0;
+    let buffer = unsafe {
+        qjs::JS_WriteObject(
+            ctx.as_raw().as_ptr(),
+            &mut len,
+            compiled.as_raw(),
+            qjs::JS_WRITE_OBJ_BYTECODE as i32,
+        )
+    };
+    if buffer.is_null() {
+        return Err(rquickjs::Error::Exception);
+    }
+    let bytecode = unsafe { std::slice::from_raw_parts(buffer, len) }.to_vec();
+    unsafe { qjs::js_free(ctx.as_raw().as_ptr(), buffer as *mut _) };
+    Ok(bytecode)
+}
+
+/// Deserializes QuickJS bytecode written by `write_bytecode` to a compiled script, which can be run with `run`
+pub(crate) fn read_bytecode<'js>(ctx: &Ctx<'js>, bytecode: &[u8]) -> rquickjs::Result<Value<'js>> {
+    let compiled = unsafe {
+        qjs::JS_ReadObject(
+            ctx.as_raw().as_ptr(),
+            bytecode.as_ptr(),
+            bytecode.len() as _,
+            qjs::JS_READ_OBJ_BYTECODE as i32,
+        )
+    };
+    if unsafe { qjs::JS_IsException(compiled) } {
+        return Err(rquickjs::Error::Exception);
+    }
+    Ok(unsafe { Value::from_raw(ctx.clone(), compiled) })
+}
+
+/// Compiles a script once, so it can be run many times without parsing it again
+#[wasm_export]
+pub fn compile_script(ctx: &Ctx<'_>, name: String, script: String) -> rquickjs::Result<JSJavaProxy> {
+    debug!("Compiling script {}", name);
+    let compiled = compile(ctx, &name, script)?;
+
+    let persistent_script = Persistent::save(ctx, compiled);
+    let persistent_script_ptr = Box::into_raw(Box::new(persistent_script)) as u64;
+    debug!("Compiled script {} -> {}", name, persistent_script_ptr);
+    Ok(JSJavaProxy::CompiledScript(name, persistent_script_ptr))
+}
+
+/// Runs a compiled script. All entries of the bindings object are set as global variables before the script is run.
+#[wasm_export]
+pub fn run_script(
+    ctx: &Ctx<'_>,
+    persistent_script: &Persistent<Value<'static>>,
+    bindings: JSJavaProxy,
+) -> rquickjs::Result<JSJavaProxy> {
+    match bindings {
+        JSJavaProxy::Object(values) => {
+            let globals = ctx.globals();
+            for (key, value) in values.into_iter() {
+                globals.set(key, value)?;
+            }
+        }
+        JSJavaProxy::Null | JSJavaProxy::Undefined => {}
+        _ => {
+            error!("Bindings of a script must be an object, got {:?}", bindings);
+            return Err(rquickjs::Error::Exception);
+        }
+    }
+
+    let compiled = persistent_script.clone().restore(ctx)?;
+    let result = run(ctx, &compiled)?;
+    JSJavaProxy::convert(result)
+}
+
+/// Compiles a script to serialized QuickJS bytecode, which can be stored and evaluated later (see `eval_bytecode`)
+#[wasm_export]
+pub fn compile_to_bytecode(ctx: &Ctx<'_>, name: String, script: String) -> rquickjs::Result<JSJavaProxy> {
+    debug!("Compiling script {} to bytecode", name);
+    let compiled = compile(ctx, &name, script)?;
+    let bytecode = write_bytecode(ctx, &compiled)?;
+    Ok(JSJavaProxy::Binary(bytecode))
+}
+
+/// Evaluates serialized QuickJS bytecode written by `compile_to_bytecode`
+#[wasm_export]
+pub fn eval_bytecode(ctx: &Ctx<'_>, bytecode: &[u8]) -> rquickjs::Result<Encoded> {
+    debug!("Evaluating {} bytes of bytecode", bytecode.len());
+    let compiled = read_bytecode(ctx, bytecode)?;
+    let result = run(ctx, &compiled)?;
+    Encoded::value(result)
+}
+
+/// Evaluates QuickJS bytecode and materializes the result (see `Encoded::materialized`)
+#[wasm_export]
+pub fn eval_bytecode_materialized(ctx: &Ctx<'_>, bytecode: &[u8]) -> rquickjs::Result<Encoded> {
+    debug!("Evaluating {} bytes of bytecode (materialized)", bytecode.len());
+    let compiled = read_bytecode(ctx, bytecode)?;
+    let result = run(ctx, &compiled)?;
+    Encoded::materialized(result)
+}
+
+#[wasm_export]
+pub fn close_script(_context: &Context, script: Box<Persistent<Value<'static>>>) -> bool {
+    debug!("Closing compiled script");
+    drop(script);
+    true
+}
+
+#[cfg(test)]
+mod tests {
+    use rquickjs::{Context, Runtime};
+
+    use super::*;
+
+    #[test]
+    fn test_compile_and_run() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let compiled = compile(&ctx, "test.js", "var counter = (globalThis.counter || 0) + 1; counter".to_string()).unwrap();
+            for i in 1..4 {
+                let result = JSJavaProxy::convert(run(&ctx, &compiled).unwrap()).unwrap();
+                assert_eq!(result, JSJavaProxy::Int(i));
+            }
+        });
+    }
+
+    #[test]
+    fn test_bytecode_roundtrip() {
+        let rt = Runtime::new().unwrap();
+        let bytecode = {
+            let context = Context::full(&rt).unwrap();
+            context.with(|ctx| {
+                let compiled = compile(&ctx, "test.js", "const a = 20; a + 22".to_string()).unwrap();
+                write_bytecode(&ctx, &compiled).unwrap()
+            })
+        };
+
+        // Bytecode can be read into any other context
+        let context = Context::full(&rt).unwrap();
+        context.with(|ctx| {
+            let compiled = read_bytecode(&ctx, &bytecode).unwrap();
+            let result = JSJavaProxy::convert(run(&ctx, &compiled).unwrap()).unwrap();
+            assert_eq!(result, JSJavaProxy::Int(42));
+        });
+    }
+
+    #[test]
+    fn test_compile_syntax_error() {
+        let rt = Runtime::new().unwrap();
+        let context = Context::full(&rt).unwrap();
+
+        context.with(|ctx| {
+            let result = compile(&ctx, "test.js", "let a = ;".to_string());
+            assert!(result.is_err());
+        });
+    }
+}
@@ -119,7 +119,11 @@ pub fn wasm_export(_attr: TokenStream, item: TokenStream) -> TokenStream {
                 let len_name = format_ident!("{}_len", arg_name);
                 wrapper_args.push(quote!(#ptr_name: *mut u8, #len_name: usize));
 
-                if type_str == "String" {
+                if type_str == "& [u8]" {
+                    conversions.push(quote! {
+                        let #arg_name: &[u8] = unsafe { std::slice::from_raw_parts(#ptr_name, #len_name) };
+                    });
+                } else if type_str == "String" {
                     conversions.push(quote! {
                         let #arg_name = unsafe {
                             let slice = std::slice::from_raw_parts(#ptr_name, #len_name);
@@ -129,7 +133,7 @@ pub fn wasm_export(_attr: TokenStream, item: TokenStream) -> TokenStream {
                 } else {
                     conversions.push(quote! {
                         let slice = unsafe { std::slice::from_raw_parts(#ptr_name, #len_name) };
-                        let #arg_name: #arg_type = match rmp_serde::from_slice(slice) {
+                        let #arg_name: #arg_type = match crate::msgpack::from_slice(slice) {
                             Ok(result) => result,
                             Err(e) => {
                                 log::error!(
@@ -0,0 +1,75 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public class BytecodeCacheTest {
+
+    /**
+     * The cache is bounded by the size of the bytecode and evicts the least
+     * recently used entries first
+     */
+    @Test
+    public void testEviction() {
+        final BytecodeCache cache = new BytecodeCache(10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertEquals(8, cache.getSize());
+
+        // Access a, so b is the least recently used entry
+        assertArrayEquals(new byte[4], cache.get("a"));
+        cache.put("c", new byte[4]);
+
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(8, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        // Entries larger than the cache are not cached at all
+        cache.put("d", new byte[11]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getEntryCount());
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * Cache keys are hashes of the script source
+     */
+    @Test
+    public void testKey() {
+        assertEquals(BytecodeCache.key("1 + 2"), BytecodeCache.key("1 + 2"));
+        assertNotEquals(BytecodeCache.key("1 + 2"), BytecodeCache.key("1 + 3"));
+        assertEquals(64, BytecodeCache.key("").length());
+    }
+
+    /**
+     * Scripts evaluated in any context of a runtime with cache are only compiled
+     * once
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvalWithCache() throws Exception {
+        final BytecodeCache cache = new BytecodeCache(1024 * 1024);
+        try (QuickJSRuntime runtime = new QuickJSRuntime().withBytecodeCache(cache);
+                QuickJSContext first = runtime.createContext();
+                QuickJSContext second = runtime.createContext()) {
+            first.setGlobal("a", 1);
+            second.setGlobal("a", 2);
+
+            assertEquals(2, first.eval("a + 1"));
+            assertEquals(3, second.eval("a + 1"));
+            assertEquals(2, first.eval("a + 1"));
+
+            assertEquals(1, cache.getEntryCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(2, cache.getHitCount());
+        }
+    }
+}
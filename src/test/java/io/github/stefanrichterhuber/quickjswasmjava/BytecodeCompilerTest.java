@@ -0,0 +1,59 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BytecodeCompilerTest {
+
+    /**
+     * Resource names are independent of the file extension and leading slashes
+     */
+    @Test
+    public void testResourceName() {
+        assertEquals("META-INF/quickjs/rules/score.qjsbc", BytecodeCompiler.resourceName("rules/score.js"));
+        assertEquals("META-INF/quickjs/rules/score.qjsbc", BytecodeCompiler.resourceName("/rules/score"));
+    }
+
+    /**
+     * Invalid arguments fail the build instead of exiting the JVM
+     */
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> BytecodeCompiler.main(new String[] { "js" }));
+    }
+
+    /**
+     * Precompiled scripts can be loaded from the classpath by name
+     *
+     * @param dir temporary directory
+     * @throws Exception
+     */
+    @Test
+    public void testCompileAndLoad(@TempDir Path dir) throws Exception {
+        final Path source = dir.resolve("js");
+        final Path output = dir.resolve("classes");
+        Files.createDirectories(source.resolve("rules"));
+        Files.writeString(source.resolve("rules/score.js"), "const base = 40; base + 2");
+        Files.writeString(source.resolve("readme.txt"), "not a script");
+
+        assertEquals(1, BytecodeCompiler.compile(source, output));
+        assertTrue(Files.exists(output.resolve("META-INF/quickjs/rules/score.qjsbc")));
+
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { output.toUri().toURL() });
+                QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(42, context.evalPrecompiled("rules/score.js", classLoader));
+            assertEquals(42, context.evalPrecompiled("rules/score", classLoader));
+            assertThrows(IllegalArgumentException.class, () -> context.evalPrecompiled("missing.js", classLoader));
+        }
+    }
+}
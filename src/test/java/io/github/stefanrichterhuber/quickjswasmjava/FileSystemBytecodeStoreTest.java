@@ -0,0 +1,113 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileSystemBytecodeStoreTest {
+
+    private static byte[] read(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Stored bytecode can be loaded again, unknown keys are not found
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStoreAndLoad(@TempDir Path dir) throws Exception {
+        final FileSystemBytecodeStore store = new FileSystemBytecodeStore(dir.resolve("cache"), 1024);
+        assertNull(store.load("abcd"));
+
+        store.store("abcd", new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, read(store.load("abcd")));
+
+        // No temporary files are left behind
+        try (Stream<Path> files = Files.list(store.getDirectory())) {
+            assertEquals(1, files.count());
+        }
+
+        // Keys must be hashes
+        assertThrows(IllegalArgumentException.class, () -> store.load("../abcd"));
+    }
+
+    /**
+     * The least recently used files are evicted if the store exceeds its maximum
+     * size
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEviction(@TempDir Path dir) throws Exception {
+        final FileSystemBytecodeStore store = new FileSystemBytecodeStore(dir, 10);
+        store.store("aa", new byte[4]);
+        store.store("bb", new byte[4]);
+        Files.setLastModifiedTime(dir.resolve("aa.qjsbc"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(dir.resolve("bb.qjsbc"), FileTime.fromMillis(2000));
+
+        store.store("cc", new byte[4]);
+        assertFalse(Files.exists(dir.resolve("aa.qjsbc")));
+        assertTrue(Files.exists(dir.resolve("bb.qjsbc")));
+        assertNotNull(store.load("cc"));
+    }
+
+    /**
+     * Reads update the modification time at most once per interval
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTouchInterval(@TempDir Path dir) throws Exception {
+        new FileSystemBytecodeStore(dir, 1024).store("aa", new byte[4]);
+        final Path file = dir.resolve("aa.qjsbc");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+
+        final FileSystemBytecodeStore store = new FileSystemBytecodeStore(dir, 1024);
+        assertNotNull(store.load("aa"));
+        assertTrue(Files.getLastModifiedTime(file).toMillis() > 1000);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        assertNotNull(store.load("aa"));
+        assertEquals(1000, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    /**
+     * A fresh runtime serves scripts from bytecode stored by another runtime
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEvalWithStore(@TempDir Path dir) throws Exception {
+        final FileSystemBytecodeStore store = new FileSystemBytecodeStore(dir, 1024 * 1024);
+        final String script = "const answer = 20 + 22; answer";
+        try (QuickJSRuntime runtime = new QuickJSRuntime().withBytecodeStore(store);
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(42, context.eval(script));
+        }
+        assertNotNull(store.load(BytecodeCache.key(script)));
+
+        final BytecodeCache cache = new BytecodeCache(1024 * 1024);
+        try (QuickJSRuntime runtime = new QuickJSRuntime().withBytecodeStore(store).withBytecodeCache(cache);
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(42, context.eval(script));
+            // Loaded from the store into the cache
+            assertEquals(1, cache.getEntryCount());
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package io.github.stefanrichterhuber.quickjswasmjava;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.Test;
 
@@ -42,4 +54,115 @@ public class MessagePackRegistryTest {
             testMapping(Map.of("a", 1, "b", 2), r);
         }
     }
+
+    /**
+     * Subclasses of registered types are packed with the handler of the first
+     * matching type, repeatedly (cached)
+     */
+    @Test
+    public void testSubclassDispatch() {
+        // Packing plain java values does not require a context
+        MessagePackRegistry r = new MessagePackRegistry(null);
+
+        for (int i = 0; i < 2; i++) {
+            testMapping(new LinkedList<>(List.of("a", "b")), r);
+            testMapping(new ArrayList<>(List.of(new TreeMap<>(Map.of("a", 1)))), r);
+            assertInstanceOf(QuickJSException.class, r.unpack(r.pack(new IllegalStateException("failed"))));
+            assertThrows(RuntimeException.class, () -> r.pack(new Object()));
+        }
+    }
+
+    /**
+     * Primitive arrays are packed as a whole and unpacked to the same type
+     */
+    @Test
+    public void testPrimitiveArrays() {
+        MessagePackRegistry r = new MessagePackRegistry(null);
+
+        assertArrayEquals(new byte[] { 1, -2, 3 }, (byte[]) r.unpack(r.pack(new byte[] { 1, -2, 3 })));
+        assertArrayEquals(new int[] { 1, -2, Integer.MAX_VALUE },
+                (int[]) r.unpack(r.pack(new int[] { 1, -2, Integer.MAX_VALUE })));
+        assertArrayEquals(new float[] { 1.5f, -2f }, (float[]) r.unpack(r.pack(new float[] { 1.5f, -2f })));
+        assertArrayEquals(new double[] { 1.5, Double.NaN, -0.0 },
+                (double[]) r.unpack(r.pack(new double[] { 1.5, Double.NaN, -0.0 })));
+        assertArrayEquals(new long[] { Long.MIN_VALUE, 42 },
+                (long[]) r.unpack(r.pack(new long[] { Long.MIN_VALUE, 42 })));
+        assertArrayEquals(new double[0], (double[]) r.unpack(r.pack(new double[0])));
+    }
+
+    /**
+     * Binary data is only received from the native library, byte[] is packed as
+     * uint8Array
+     */
+    @Test
+    public void testBinary() {
+        MessagePackRegistry r = new MessagePackRegistry(null, MessagePackRegistry.FORMAT_COMPACT);
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) r.unpack(new byte[] { 16, (byte) 0xc4, 3, 1, 2, 3 }));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) r.unpack(new byte[] { (byte) 0x81, (byte) 0xa6, 'b', 'i',
+                'n', 'a', 'r', 'y', (byte) 0xc4, 3, 1, 2, 3 }));
+        assertEquals(17, r.pack(new byte[] { 1, 2, 3 })[0]);
+    }
+
+    /**
+     * The compact format transfers the same values with less bytes, both formats
+     * are always accepted when unpacking
+     */
+    @Test
+    public void testCompactFormat() {
+        MessagePackRegistry tagged = new MessagePackRegistry(null, MessagePackRegistry.FORMAT_TAGGED);
+        MessagePackRegistry compact = new MessagePackRegistry(null, MessagePackRegistry.FORMAT_COMPACT);
+
+        Map<String, Object> document = Map.of("id", 1, "name", "item", "price", 0.5, "active", true,
+                "tags", List.of("a", "b"), "nested", Map.of("values", List.of(1.5, 2.5)));
+        List<Object> values = new ArrayList<>(List.of(document, "String content", 49, 49.0d, false));
+        values.add(null);
+
+        for (Object value : values) {
+            testMapping(value, compact);
+            assertEquals(tagged.unpack(tagged.pack(value)), compact.unpack(tagged.pack(value)));
+            assertEquals(tagged.unpack(tagged.pack(value)), tagged.unpack(compact.pack(value)));
+        }
+        assertEquals(1, compact.pack(null).length);
+        assertTrue(compact.pack(document).length < tagged.pack(document).length);
+    }
+
+    /**
+     * Strings with only Latin-1 characters are transferred as raw Latin-1 bytes
+     */
+    @Test
+    public void testLatin1Strings() {
+        MessagePackRegistry compact = new MessagePackRegistry(null, MessagePackRegistry.FORMAT_COMPACT);
+        MessagePackRegistry latin1 = new MessagePackRegistry(null, MessagePackRegistry.FORMAT_LATIN1);
+
+        for (String value : List.of("", "id-4711", "café", "5 €", "\u00ff\u0100")) {
+            testMapping(value, latin1);
+            testMapping(List.of(value, Map.of("key", value)), latin1);
+            assertEquals(value, compact.unpack(latin1.pack(value)));
+        }
+        // Type code, binary header and the raw Latin-1 bytes
+        assertArrayEquals(new byte[] { 22, (byte) 0xc4, 4, 'c', 'a', 'f', (byte) 0xe9 }, latin1.pack("café"));
+        assertArrayEquals(compact.pack("5 €"), latin1.pack("5 €"));
+        assertArrayEquals(compact.pack("id-4711"), latin1.pack("id-4711"));
+        assertTrue(latin1.pack("ééééé").length < compact.pack("ééééé").length);
+    }
+
+    /**
+     * The type codes of the compact format match the tags of the native library
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testCodesMatchNativeLibrary() throws Exception {
+        final String source = Files.readString(Path.of("src/main/rust/quickjslib/wasm_lib/src/msgpack.rs"));
+        final Matcher matcher = Pattern.compile("pub const (\\w+): u8 = (\\d+);").matcher(source);
+        int count = 0;
+        while (matcher.find()) {
+            final Field field = MessagePackRegistry.class.getDeclaredField("CODE_" + matcher.group(1));
+            field.setAccessible(true);
+            assertEquals(Integer.parseInt(matcher.group(2)), field.getInt(null), matcher.group(1));
+            count++;
+        }
+        assertEquals(23, count);
+    }
 }
@@ -0,0 +1,72 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class QuickJSBatchTest {
+
+    /**
+     * All recorded operations are applied in order, only requested reads are
+     * returned
+     *
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testApply() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSObject<String, Object> input = new QuickJSObject<>(context);
+            final QuickJSArray<Object> items = new QuickJSArray<>(context);
+            input.put("items", items);
+
+            final QuickJSBatch batch = context.batch();
+            for (int i = 0; i < 200; i++) {
+                batch.put(input, "field" + i, i);
+                batch.add(items, "item" + i);
+            }
+            batch.remove(input, "field0");
+            batch.set(items, 0, "first");
+            batch.remove(items, 199);
+            final int field = batch.get(input, "field199");
+            final int item = batch.get(items, 0);
+            assertEquals(405, batch.size());
+
+            final List<Object> results = batch.apply();
+            assertEquals(2, results.size());
+            assertEquals(199, results.get(field));
+            assertEquals("first", results.get(item));
+            assertEquals(0, batch.size());
+
+            context.setGlobal("input", (Object) input);
+            assertEquals(199, context.evalInt("input.items.length"));
+            assertTrue(context.evalBoolean("input.field0 === undefined && input.field1 === 1"));
+
+            assertTrue(batch.apply().isEmpty());
+        }
+    }
+
+    /**
+     * The first failing operation aborts the batch
+     *
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFailingOperation() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSObject<String, Object> frozen = (QuickJSObject<String, Object>) context
+                    .eval("Object.freeze({a: 1})");
+
+            final QuickJSBatch batch = context.batch().put(frozen, "a", 2);
+            assertThrows(QuickJSException.class, () -> batch.apply());
+            assertEquals(1, frozen.get("a"));
+        }
+    }
+}
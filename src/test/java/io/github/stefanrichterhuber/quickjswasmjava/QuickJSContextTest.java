@@ -1,13 +1,21 @@
 package io.github.stefanrichterhuber.quickjswasmjava;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -840,4 +848,472 @@ public class QuickJSContextTest {
         }
     }
 
+    /**
+     * Compiled scripts can be run multiple times, with bindings set as global
+     * variables
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void compiledScripts() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            QuickJSScript script = context.compile(
+                    "var counter = (typeof counter === 'undefined' ? 0 : counter) + step; counter", "counter.js");
+            assertEquals("counter.js", script.getName());
+
+            // Compiling does not run the script
+            assertNull(context.getGlobal("counter"));
+
+            assertEquals(1, script.run(Map.of("step", 1)));
+            assertEquals(3, script.run(Map.of("step", 2)));
+            assertEquals(5, script.run());
+
+            QuickJSScript failing = context.compile("throw new Error('test');", "failing.js");
+            try {
+                failing.run();
+                fail("Exception should have been thrown");
+            } catch (QuickJSException e) {
+                assertEquals("test", e.getRawMessage());
+            }
+        }
+    }
+
+    /**
+     * Syntax errors are reported when compiling a script
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void compileScriptWithSyntaxError() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            try {
+                context.compile("let a = ;", "broken.js");
+                fail("Exception should have been thrown");
+            } catch (QuickJSException e) {
+                assertNotNull(e.getRawMessage());
+            }
+        }
+    }
+
+    /**
+     * Bytecode can be evaluated in any other runtime, bytecode of other wasm
+     * modules is rejected
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void bytecodeSupport() throws Exception {
+        final byte[] bytecode;
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            bytecode = context.compileToBytecode("const answer = 20 + 22; answer");
+            // Compiling does not run the script
+            assertNull(context.getGlobal("answer"));
+        }
+
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(42, context.evalBytecode(bytecode));
+
+            // Simulate bytecode of a different wasm module by changing the fingerprint
+            final byte[] stale = bytecode.clone();
+            stale[12] ^= 1;
+            assertThrows(IllegalArgumentException.class, () -> context.evalBytecode(stale));
+            assertThrows(IllegalArgumentException.class, () -> context.evalBytecode(new byte[] { 1, 2, 3 }));
+        }
+    }
+
+    /**
+     * Large values are streamed into and out of the wasm memory in several chunks
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void largeValues() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final List<String> values = new ArrayList<>();
+            for (int i = 0; i < 100_000; i++) {
+                values.add("value " + i);
+            }
+            context.setGlobal("values", values);
+            assertEquals(100_000, context.eval("values.length"));
+            assertEquals("value 99999", context.eval("values[99999]"));
+
+            // ... and read back in several chunks (materialized, so the whole list is
+            // a single result far larger than a chunk)
+            final Object result = context.evalMaterialized("values.map(v => v + '!')");
+            assertInstanceOf(List.class, result);
+            assertEquals(100_000, ((List<?>) result).size());
+            assertEquals("value 0!", ((List<?>) result).get(0));
+            assertEquals("value 99999!", ((List<?>) result).get(99999));
+
+            final Object bytes = context.eval("Uint8Array.from({ length: 200000 }, (_, i) => i % 251)");
+            assertInstanceOf(byte[].class, bytes);
+            assertEquals(200_000, ((byte[]) bytes).length);
+            assertEquals((byte) (199_999 % 251), ((byte[]) bytes)[199_999]);
+        }
+    }
+
+    /**
+     * Arguments of nested calls and arguments too large for the scratch arena are
+     * written to the wasm memory correctly
+     * 
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void scratchArena() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSObject<String, Object> obj = (QuickJSObject<String, Object>) context
+                    .eval("({ a: 1, b: 'two' })");
+            // Java function called from JS, accessing the object while the arguments of
+            // the outer call are still in use
+            context.setGlobal("read", (Function<String, Object>) key -> obj.get(key));
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(1, obj.get("a"));
+                assertEquals("two", context.eval("read('b')"));
+            }
+
+            final String large = "x".repeat(ScratchArena.MAX_CAPACITY + 1);
+            context.setGlobal("large", large);
+            assertEquals(large.length(), context.eval("large.length"));
+            assertEquals(1, obj.get("a"));
+        }
+    }
+
+    /**
+     * Scalar results are returned as primitives, exceptions and type mismatches
+     * are reported
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void scalarEval() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(42, context.evalInt("40 + 2"));
+            assertEquals(-4, context.evalInt("-8 / 2"));
+            assertEquals(0.5, context.evalDouble("1 / 2"));
+            assertEquals(3.0, context.evalDouble("1 + 2"));
+            assertTrue(context.evalBoolean("1 < 2"));
+            assertFalse(context.evalBoolean("1 > 2"));
+            assertEquals("héllo wörld", context.evalString("'héllo' + ' wörld'"));
+            assertNull(context.evalString("undefined"));
+
+            assertThrows(ClassCastException.class, () -> context.evalInt("0.5"));
+            assertThrows(ClassCastException.class, () -> context.evalBoolean("'true'"));
+            final QuickJSException e = assertThrows(QuickJSException.class,
+                    () -> context.evalDouble("throw new Error('failed')"));
+            assertEquals("failed", e.getMessage());
+
+            // The context is still usable after an exception
+            assertEquals(1, context.evalInt("1"));
+        }
+    }
+
+    /**
+     * Functions can be called with primitive arguments and results
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void typedFunctionCalls() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSFunction price = (QuickJSFunction) context
+                    .eval("(base, quantity, discount) => base * quantity * (1 - discount)");
+            assertEquals(22.5, price.callDouble(10, 2.5, 0.1), 0.0001);
+            assertEquals(20.0, price.callDouble(10, 2, 0));
+
+            final QuickJSFunction sum = (QuickJSFunction) context
+                    .eval("(...values) => values.reduce((a, b) => a + b, 0)");
+            assertEquals(6, sum.callInt(1, 2, 3));
+            assertEquals(0, sum.callInt());
+            // More arguments than fit into the argument area
+            final int[] values = new int[QuickJSFunction.MAX_TYPED_ARGS + 4];
+            Arrays.fill(values, 2);
+            assertEquals(values.length * 2, sum.callInt(values));
+
+            final QuickJSFunction half = (QuickJSFunction) context.eval("(a) => a / 2");
+            assertThrows(ClassCastException.class, () -> half.callInt(3));
+            final QuickJSFunction fail = (QuickJSFunction) context.eval("(a) => { throw new Error('failed ' + a); }");
+            assertThrows(QuickJSException.class, () -> fail.callDouble(1));
+        }
+    }
+
+    /**
+     * Primitive arrays are passed as typed arrays in both directions
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void typedArrays() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final double[] samples = new double[100_000];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = i * 0.5;
+            }
+            context.setGlobal("samples", samples);
+            assertTrue(context.evalBoolean("samples instanceof Float64Array"));
+            assertEquals(99_999 * 0.5, context.evalDouble("samples[samples.length - 1]"));
+
+            final Object scaled = context.eval("samples.map(v => v * 2)");
+            assertInstanceOf(double[].class, scaled);
+            assertEquals(99_999.0, ((double[]) scaled)[99_999]);
+
+            context.setGlobal("bytes", new byte[] { 1, 2, (byte) 255 });
+            assertEquals(255, context.evalInt("bytes[2]"));
+            assertInstanceOf(int[].class, context.eval("new Int32Array([1, 2, 3])"));
+            assertInstanceOf(float[].class, context.eval("new Float32Array([1.5])"));
+            assertInstanceOf(long[].class, context.eval("new BigInt64Array([1n])"));
+            assertInstanceOf(byte[].class, context.eval("new Uint8Array([1])"));
+        }
+    }
+
+    @Test
+    public void arrayBuffers() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSArrayBuffer frame = new QuickJSArrayBuffer(context, 16);
+            assertEquals(16, frame.byteLength());
+            frame.setDouble(0, 1.5);
+            frame.setInt(8, 42);
+            context.setGlobal("frame", frame);
+            assertEquals(1.5, context.evalDouble("new Float64Array(frame, 0, 1)[0]"));
+            assertEquals(42, context.evalInt("new Int32Array(frame, 8, 1)[0]"));
+
+            // Changes in JS are visible without any copy
+            context.eval("new Uint8Array(frame).fill(7, 12)");
+            assertEquals(7, frame.getByte(15));
+            assertArrayEquals(new byte[] { 7, 7, 7, 7 }, frame.read(12, 4));
+
+            final Object created = context.eval("new ArrayBuffer(4)");
+            assertInstanceOf(QuickJSArrayBuffer.class, created);
+            ((QuickJSArrayBuffer) created).write(0, new byte[] { 1, 2, 3, 4 });
+            context.setGlobal("created", created);
+            assertEquals(10, context.evalInt("new Uint8Array(created).reduce((a, b) => a + b)"));
+            assertThrows(IndexOutOfBoundsException.class, () -> ((QuickJSArrayBuffer) created).getInt(2));
+
+            // Detached buffers are empty
+            context.eval("created.transfer()");
+            assertEquals(0, ((QuickJSArrayBuffer) created).byteLength());
+
+            // ... even if detached by JS in between two calls back into Java
+            final QuickJSArrayBuffer callback = new QuickJSArrayBuffer(context, 8);
+            context.setGlobal("callback", callback);
+            context.setGlobal("byteLength", (Function<Object, Object>) o -> callback.byteLength());
+            assertEquals(List.of(8, 0), context.evalMaterialized("[byteLength(0), (callback.transfer(), byteLength(0))]"));
+
+            // ... or by JS after the call back into Java returned
+            final QuickJSArrayBuffer returned = new QuickJSArrayBuffer(context, 8);
+            context.setGlobal("returned", returned);
+            context.setGlobal("returnedLength", (Function<Object, Object>) o -> returned.byteLength());
+            assertEquals(8, context.evalInt("(() => { const length = returnedLength(0); returned.transfer(); return length; })()"));
+            assertEquals(0, returned.byteLength());
+            assertThrows(IndexOutOfBoundsException.class, () -> returned.getInt(0));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void materializedResults() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            context.eval("var config = {name: 'test', values: [1, 2.5, {nested: true}], empty: null}");
+
+            final Object config = context.getGlobalMaterialized("config");
+            assertInstanceOf(HashMap.class, config);
+            final Map<String, Object> map = (Map<String, Object>) config;
+            assertEquals("test", map.get("name"));
+            assertNull(map.get("empty"));
+            final List<Object> values = (List<Object>) map.get("values");
+            assertInstanceOf(ArrayList.class, values);
+            assertEquals(List.of(1, 2.5, Map.of("nested", true)), values);
+
+            // Default mode still returns handles
+            assertInstanceOf(QuickJSObject.class, context.getGlobal("config"));
+            context.withMaterializedResults(true);
+            assertInstanceOf(HashMap.class, context.getGlobal("config"));
+            assertInstanceOf(ArrayList.class, context.eval("[1, 2, 3]"));
+            assertInstanceOf(QuickJSFunction.class, context.eval("() => 1"));
+
+            assertThrows(QuickJSException.class, () -> context.eval("const o = {}; o.self = o; o"));
+
+            // Only plain objects are copied, instances of other classes stay handles
+            final Map<String, Object> instances = (Map<String, Object>) context
+                    .evalMaterialized("({plain: Object.create(null), when: new Date(0), tags: new Set([1])})");
+            assertEquals(Map.of(), instances.get("plain"));
+            assertInstanceOf(QuickJSObject.class, instances.get("when"));
+            assertInstanceOf(QuickJSObject.class, instances.get("tags"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void objectEntries() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSObject<String, Object> object = (QuickJSObject<String, Object>) context
+                    .eval("({a: 1, b: 'x', c: true, d: null})");
+
+            final List<String> keys = new ArrayList<>();
+            final List<Object> values = new ArrayList<>();
+            for (Map.Entry<String, Object> entry : object.entrySet()) {
+                keys.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+            assertEquals(List.of("a", "b", "c", "d"), keys);
+            assertEquals(Arrays.asList(1, "x", true, null), values);
+            assertEquals(Arrays.asList(1, "x", true, null), new ArrayList<>(object.values()));
+            assertTrue(object.containsValue("x"));
+
+            // Setting the value of an entry writes it to the object
+            object.entrySet().iterator().next().setValue(2);
+            assertEquals(2, object.get("a"));
+
+            final List<String> paged = new ArrayList<>();
+            final var iterator = object.entryIterator(3);
+            while (iterator.hasNext()) {
+                paged.add(iterator.next().getKey());
+            }
+            assertEquals(keys, paged);
+
+            // Keys are captured once: keys removed during the iteration are skipped,
+            // keys added are not returned
+            final var changing = object.entryIterator(1);
+            assertEquals("a", changing.next().getKey());
+            object.remove("b");
+            object.set("e", 5);
+            final List<String> remaining = new ArrayList<>();
+            changing.forEachRemaining(entry -> remaining.add(entry.getKey()));
+            assertEquals(List.of("c", "d"), remaining);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void arrayBulkOperations() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSArray<Object> array = (QuickJSArray<Object>) context
+                    .eval("Array.from({ length: 1000 }, (_, i) => i)");
+
+            int expected = 0;
+            for (Object value : array) {
+                assertEquals(expected++, value);
+            }
+            assertEquals(1000, expected);
+            assertEquals(999 * 500, array.stream().mapToInt(v -> (Integer) v).sum());
+            assertEquals(999, array.toArray()[999]);
+            assertEquals(List.of(10, 11, 12), array.getRange(10, 13));
+
+            array.setRange(998, List.of("a", "b", "c"));
+            assertEquals(1001, array.size());
+            assertEquals("c", array.get(1000));
+
+            array.addAll(1, List.of(true, false));
+            assertEquals(List.of(0, true, false, 1), array.getRange(0, 4));
+
+            array.subList(1, 3).clear();
+            assertEquals(List.of(0, 1, 2), array.getRange(0, 3));
+
+            final Iterator<Object> iterator = array.iterator(7);
+            while (iterator.hasNext()) {
+                if (iterator.next() instanceof String) {
+                    iterator.remove();
+                }
+            }
+            assertEquals(998, array.size());
+            assertEquals(997, array.get(997));
+
+            array.clear();
+            assertTrue(array.isEmpty());
+        }
+    }
+
+    @Test
+    public void objectWriteFastPaths() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            final QuickJSObject<String, Object> object = new QuickJSObject<>(context);
+            assertNull(object.put("a", 1));
+            assertEquals(1, object.put("a", 2));
+            assertNull(object.swap("a", 3, false));
+            assertEquals(3, object.swap("a", 4, true));
+
+            object.set("b", "x");
+            assertEquals("x", object.get("b"));
+            object.delete("b");
+            assertFalse(object.containsKey("b"));
+            assertEquals(4, object.remove("a"));
+            assertNull(object.remove("a"));
+
+            final Map<String, Object> fields = new HashMap<>();
+            for (int i = 0; i < 100; i++) {
+                fields.put("field" + i, i);
+            }
+            object.putAll(fields);
+            assertEquals(100, object.size());
+            assertEquals(99, object.get("field99"));
+        }
+    }
+
+    @Test
+    public void json() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            context.setGlobalJson("doc", "{\"name\":\"t\u00e4st\",\"values\":[1,2.5,true,null]}"
+                    .getBytes(StandardCharsets.UTF_8));
+            assertEquals("täst", context.evalString("doc.name"));
+            assertEquals(4, context.evalInt("doc.values.length"));
+
+            assertEquals("{\"name\":\"täst\",\"values\":[1,2.5,true,null]}",
+                    new String(context.getGlobalJson("doc"), StandardCharsets.UTF_8));
+            assertEquals("[1,\"a\"]", new String(context.evalJson("[1, 'a']"), StandardCharsets.UTF_8));
+            assertNull(context.evalJson("undefined"));
+
+            context.setGlobalJson("buffer", ByteBuffer.wrap("[1, 2, 3]".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(6, context.evalInt("buffer.reduce((a, b) => a + b)"));
+
+            assertThrows(QuickJSException.class, () -> context.setGlobalJson("invalid", new byte[] { '{' }));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void latin1Strings() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime().withLatin1Strings(true);
+                QuickJSContext context = runtime.createContext()) {
+            assertEquals(MessagePackRegistry.FORMAT_LATIN1, runtime.getWireFormat());
+            assertThrows(IllegalStateException.class, () -> runtime.withLatin1Strings(false));
+
+            // Java -> JS -> Java
+            context.setGlobal("dessert", "crème brûlée");
+            assertEquals(12, context.evalInt("dessert.length"));
+            assertEquals("crème brûlée à la café", context.evalString("dessert + ' à la café'"));
+
+            // Nested in materialized values, mixed with ASCII and non Latin-1 strings
+            context.setGlobal("menu", Map.of("dessert", "crème brûlée", "drink", "tea", "price", "5 €"));
+            final Map<String, Object> menu = (Map<String, Object>) context
+                    .evalMaterialized("({...menu, items: [menu.dessert, 'naïve', 'ascii', '日本']})");
+            assertEquals("crème brûlée", menu.get("dessert"));
+            assertEquals("tea", menu.get("drink"));
+            assertEquals("5 €", menu.get("price"));
+            assertEquals(List.of("crème brûlée", "naïve", "ascii", "日本"), menu.get("items"));
+
+            // Arguments and results of Java functions
+            context.setGlobal("shout", (Function<String, String>) s -> s.toUpperCase() + "!");
+            assertEquals("CRÈME BRÛLÉE!", context.evalString("shout(dessert)"));
+        }
+
+        // The default format does not transfer raw Latin-1 strings
+        try (QuickJSRuntime runtime = new QuickJSRuntime()) {
+            assertEquals(MessagePackRegistry.FORMAT_COMPACT, runtime.getWireFormat());
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+public class QuickJSRuntimePoolTest {
+
+    /**
+     * Borrowed runtimes are usable and reset when returned to the pool
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        try (QuickJSRuntimePool pool = new QuickJSRuntimePool(1, 2)) {
+            assertEquals(1, pool.getIdleCount());
+
+            final QuickJSRuntime runtime = pool.borrow();
+            assertEquals(1, pool.getBorrowedCount());
+            final QuickJSContext context = runtime.createContext();
+            assertEquals(3, context.eval("1 + 2"));
+            pool.returnRuntime(runtime);
+            assertEquals(0, pool.getBorrowedCount());
+
+            // The context was closed on return
+            assertThrows(IllegalStateException.class, context::getContextPointer);
+
+            // The runtime is reused and still working
+            final QuickJSRuntime reused = pool.borrow();
+            assertSame(runtime, reused);
+            try (QuickJSContext ctx = reused.createContext()) {
+                assertEquals(42, ctx.eval("40 + 2"));
+            }
+            pool.returnRuntime(reused);
+        }
+    }
+
+    /**
+     * If the maximum number of runtimes is borrowed, borrow waits for a returned
+     * runtime
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPoolExhausted() throws Exception {
+        try (QuickJSRuntimePool pool = new QuickJSRuntimePool(0, 1)) {
+            final QuickJSRuntime runtime = pool.borrow();
+            assertThrows(TimeoutException.class, () -> pool.borrow(50, TimeUnit.MILLISECONDS));
+            pool.returnRuntime(runtime);
+            assertSame(runtime, pool.borrow(50, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /**
+     * Borrows a runtime from the given pool in another thread
+     *
+     * @param pool Pool to borrow from
+     * @return Borrowed runtime
+     */
+    private static CompletableFuture<QuickJSRuntime> borrowAsync(QuickJSRuntimePool pool) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Closing the pool wakes up callers waiting for a runtime
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCloseWakesWaitingBorrowers() throws Exception {
+        final QuickJSRuntimePool pool = new QuickJSRuntimePool(0, 1);
+        final QuickJSRuntime runtime = pool.borrow();
+        final CompletableFuture<QuickJSRuntime> first = borrowAsync(pool);
+        final CompletableFuture<QuickJSRuntime> second = borrowAsync(pool);
+        Thread.sleep(100);
+        pool.close();
+
+        for (CompletableFuture<QuickJSRuntime> waiting : List.of(first, second)) {
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> waiting.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+        assertThrows(IllegalStateException.class, pool::borrow);
+        assertEquals(0, pool.getIdleCount());
+
+        // Runtimes returned after close are discarded
+        pool.returnRuntime(runtime);
+        assertTrue(runtime.isClosed());
+    }
+
+    /**
+     * Runtimes exceeding their memory limit are discarded on return
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRuntimeRecycledOnMemoryLimit() throws Exception {
+        try (QuickJSRuntimePool pool = new QuickJSRuntimePool(0, 1).withMaxRuntimeMemory(1)) {
+            final QuickJSRuntime runtime = pool.borrow();
+            pool.returnRuntime(runtime);
+            assertTrue(runtime.isClosed());
+
+            final QuickJSRuntime replacement = pool.borrow(10, TimeUnit.SECONDS);
+            assertNotSame(runtime, replacement);
+            pool.returnRuntime(replacement);
+        }
+    }
+
+    /**
+     * Only runtimes borrowed from the pool can be returned
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReturnForeignRuntime() throws Exception {
+        try (QuickJSRuntimePool pool = new QuickJSRuntimePool(0, 1);
+                QuickJSRuntime runtime = new QuickJSRuntime()) {
+            assertThrows(IllegalArgumentException.class, () -> pool.returnRuntime(runtime));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.stefanrichterhuber.quickjswasmjava;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class QuickJSSnapshotTest {
+
+    private static final String LIBRARY = "var counter = 0; function next() { return ++counter; }; undefined";
+
+    /**
+     * Restored runtimes contain the state of the snapshot and are independent of
+     * each other
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSnapshotAndRestore() throws Exception {
+        final QuickJSSnapshot snapshot;
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            context.eval(LIBRARY);
+            assertEquals(1, context.eval("next()"));
+            snapshot = runtime.snapshot();
+            assertEquals(2, context.eval("next()"));
+        }
+
+        try (QuickJSRuntime first = snapshot.restore(); QuickJSRuntime second = snapshot.restore()) {
+            assertEquals(1, first.getContexts().size());
+            final QuickJSContext firstContext = first.getContexts().get(0);
+            final QuickJSContext secondContext = second.getContexts().get(0);
+
+            assertEquals(2, firstContext.eval("next()"));
+            assertEquals(3, firstContext.eval("next()"));
+            assertEquals(2, secondContext.eval("next()"));
+
+            // Restored contexts are fully functional, including new contexts
+            firstContext.setGlobal("f", (Function<Integer, Integer>) x -> x * 2);
+            assertEquals(6, firstContext.eval("f(next())"));
+            try (QuickJSContext other = second.createContext()) {
+                assertEquals(3, other.eval("1 + 2"));
+            }
+        }
+    }
+
+    /**
+     * Snapshots can be serialized and restored from their serialized form
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSerialization() throws Exception {
+        final byte[] data;
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            context.eval(LIBRARY);
+            data = runtime.snapshot().toByteArray();
+        }
+
+        try (QuickJSRuntime restored = QuickJSSnapshot.fromByteArray(data).restore()) {
+            assertEquals(1, restored.getContexts().get(0).eval("next()"));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> QuickJSSnapshot.fromByteArray(new byte[] { 1, 2, 3 }));
+    }
+
+    /**
+     * Contexts holding Java references can not be snapshotted
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSnapshotWithJavaReferences() throws Exception {
+        try (QuickJSRuntime runtime = new QuickJSRuntime();
+                QuickJSContext context = runtime.createContext()) {
+            context.setGlobal("f", (Function<Integer, Integer>) x -> x * 2);
+            assertThrows(IllegalStateException.class, runtime::snapshot);
+        }
+    }
+}